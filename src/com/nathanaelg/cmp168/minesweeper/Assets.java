@@ -0,0 +1,112 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import javafx.scene.image.Image;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaException;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the images, sounds and videos used by the game.
+ * <p>
+ * Nothing is loaded when this class is initialized. Each asset
+ * is loaded the first time it is needed, and
+ * {@link #loadInBackground()} loads all of them on a background
+ * thread so the first frame of the game can be shown without
+ * waiting for media to be decoded.
+ * <p>
+ * Missing or unsupported media is treated as optional: the
+ * game simply plays no sound or video for it.
+ */
+public final class Assets {
+
+    /**
+     * Sounds and videos played by the game.
+     */
+    public enum Sound {
+        GAME_OVER("resources/sounds/gameover.mp3"),
+        PLOP("resources/sounds/plop.mp3"),
+        WIN("resources/sounds/win.mp3"),
+        CONFETTI("resources/animations/confetti.mp4");
+
+        private final String path;
+
+        Sound(String path) {
+            this.path = path;
+        }
+    }
+
+    private static final AtomicBoolean loading = new AtomicBoolean();
+    private static final Map<Sound, Optional<Media>> media = new ConcurrentHashMap<>();
+
+    private Assets() {
+    }
+
+    /**
+     * Starts loading every asset on a background daemon
+     * thread. Calling this method more than once does nothing.
+     */
+    public static void loadInBackground() {
+        if (!loading.compareAndSet(false, true)) return;
+        Thread loader = new Thread(() -> {
+            Images.flag.getWidth(); //initializes the images
+            for (Sound sound : Sound.values()) media(sound);
+        }, "asset-loader");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+    }
+
+    /**
+     * Gets a sound or video, loading it if it has
+     * not been loaded yet.
+     *
+     * @param sound sound or video to get
+     * @return the media, or null if it is missing or cannot be played
+     */
+    public static Media media(Sound sound) {
+        return media.computeIfAbsent(sound, Assets::load).orElse(null);
+    }
+
+    private static Optional<Media> load(Sound sound) {
+        URL url = ClassLoader.getSystemResource(sound.path);
+        if (url == null) return Optional.empty();
+        try {
+            return Optional.of(new Media(url.toExternalForm()));
+        } catch (MediaException | UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the image of a flag.
+     *
+     * @return image of a flag
+     */
+    public static Image flagImage() {
+        return Images.flag;
+    }
+
+    /**
+     * Gets the image of a bomb.
+     *
+     * @return image of a bomb
+     */
+    public static Image bombImage() {
+        return Images.bomb;
+    }
+
+    /**
+     * Holds the images, which are decoded when this
+     * class is first used rather than when the game starts.
+     */
+    private static final class Images {
+        private static final Image flag = new Image(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("resources/images/flag-100x.png")));
+        private static final Image bomb = new Image(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("resources/images/bomb-100x.png")));
+    }
+}
@@ -0,0 +1,599 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how hard a board is to solve, e.g. to
+ * grade generated boards or to filter out boards that are too easy.
+ * <p>
+ * An opening is a group of connected cells with a count of 0.
+ * Clicking any of them reveals the whole group together with the
+ * numbered cells around it, so each opening takes one click. Every
+ * other numbered cell without a bomb is isolated and takes a click
+ * of its own. The smallest number of clicks that solves the board,
+ * known as its 3BV (Bechtel's Board Benchmark Value), is therefore
+ * the number of openings plus the number of isolated cells. Isolated
+ * cells that touch each other form islands.
+ * <p>
+ * Openings and islands are found with a union-find over the flat
+ * indices of the cells, visiting each cell once instead of filling
+ * each group recursively. On the classic square grid, large boards
+ * are split into stripes of rows that are processed in parallel:
+ * each stripe joins its own cells, then the rows on either side of
+ * each boundary between stripes are joined. Other topologies are
+ * processed in a single stripe.
+ * <p>
+ * Boards other than a {@link BombGrid}, e.g. an {@link OffHeapBoard},
+ * are on the square grid. Their counts and bombs are never copied as a
+ * whole: each stripe reads the rows around the row it is at through
+ * {@link BoardView}, keeping only three rows of counts at a time.
+ * <p>
+ * NOTE: Every cell is given an int index into an int array of groups,
+ * so a board can have at most {@link Integer#MAX_VALUE} cells, and
+ * analyzing it takes 4 bytes of heap per cell.
+ */
+public final class BoardAnalyzer {
+    private static final int NONE = Integer.MIN_VALUE; //cell is neither in an opening nor isolated
+    private static final int PARALLEL_CELLS = 1 << 16; //smaller boards are processed in a single stripe
+    private static final VarHandle PARENT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Topology topology; //null on the classic square grid
+    private final BoardView board;
+    private final int[][] counts; //null unless the board is a BombGrid
+    private final boolean[][] bombs; //null unless the board is a BombGrid
+    private final int numRows;
+    private final int numColumns;
+    /*
+     * For cells in an opening or isolated: the index of the parent of
+     * the cell in its group, or minus the size of the group if the cell
+     * is the root of the group. The size of an opening also includes
+     * the numbered cells around it. NONE for all other cells.
+     */
+    private final int[] parent;
+
+    private BoardAnalyzer(BoardView board) {
+        if (board.getNumCells() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("board has too many cells to analyze: " + board.getNumCells());
+        this.board = board;
+        this.numRows = board.getNumRows();
+        this.numColumns = board.getNumColumns();
+        if (board instanceof BombGrid bombGrid) {
+            Topology topology = bombGrid.getTopology();
+            this.topology = topology.getKind() == Topology.Kind.SQUARE_8 ? null : topology;
+            this.counts = bombGrid.getCountRows();
+            this.bombs = bombGrid.getBombRows();
+        } else {
+            this.topology = null;
+            this.counts = null;
+            this.bombs = null;
+        }
+        this.parent = new int[(int) board.getNumCells()];
+    }
+
+    /**
+     * Analyzes a board, using as many stripes as there are
+     * processors if the board is large enough.
+     *
+     * @param board board to analyze
+     * @return analysis of the board
+     * @throws IllegalArgumentException if the board has more than {@link Integer#MAX_VALUE} cells
+     */
+    public static Analysis analyze(BoardView board) {
+        int numStripes = board.getNumCells() < PARALLEL_CELLS ? 1 : Runtime.getRuntime().availableProcessors() * 4;
+        return analyze(board, numStripes);
+    }
+
+    /**
+     * Analyzes a board split into the given number of stripes
+     * of rows. Only boards on the classic square grid are split.
+     *
+     * @param board      board to analyze
+     * @param numStripes largest number of stripes to process in parallel
+     * @return analysis of the board
+     * @throws IllegalArgumentException if the board has more than {@link Integer#MAX_VALUE} cells
+     */
+    public static Analysis analyze(BoardView board, int numStripes) {
+        if (numStripes <= 0) throw new IllegalArgumentException("number of stripes must be positive");
+        BoardAnalyzer analyzer = new BoardAnalyzer(board);
+        if (analyzer.topology != null) return analyzer.analyzeTopology();
+        return analyzer.analyzeSquare(Math.min(numStripes, board.getNumRows()));
+    }
+
+    /**
+     * Analyzes a board on the classic square grid, where
+     * each cell is joined to the cells to its left, top-left,
+     * top and top-right, so every pair of neighbours is looked
+     * at once.
+     */
+    private Analysis analyzeSquare(int numStripes) {
+        int[] stripeStarts = new int[numStripes + 1];
+        for (int s = 0; s <= numStripes; s++) stripeStarts[s] = (int) ((long) this.numRows * s / numStripes);
+
+        IntStream stripes = IntStream.range(0, numStripes);
+        if (numStripes > 1) stripes = stripes.parallel();
+        stripes.forEach(s -> {
+            Rows rows = new Rows(stripeStarts[s]);
+            for (int row = stripeStarts[s]; row < stripeStarts[s + 1]; row++) {
+                this.labelRow(row, rows, row > stripeStarts[s]);
+                rows.next();
+            }
+        });
+
+        //join the first row of each stripe to the last row of the stripe above it
+        for (int s = 1; s < numStripes; s++) this.joinAbove(stripeStarts[s]);
+
+        Stripe[] results = new Stripe[numStripes];
+        stripes = IntStream.range(0, numStripes);
+        if (numStripes > 1) stripes = stripes.parallel();
+        stripes.forEach(s -> results[s] = this.countRows(stripeStarts[s], stripeStarts[s + 1], numStripes > 1));
+
+        int numOpenings = 0;
+        int numIsolated = 0;
+        int numIslands = 0;
+        for (Stripe result : results) {
+            numOpenings += result.numOpenings;
+            numIsolated += result.numIsolated;
+            numIslands += result.numIslands;
+        }
+        //the sizes of the openings are only complete once every stripe has been counted
+        int[] openingSizes = new int[numOpenings];
+        int next = 0;
+        for (Stripe result : results) {
+            for (int k = 0; k < result.numOpenings; k++) openingSizes[next++] = -this.parent[result.openings[k]];
+        }
+        return new Analysis(openingSizes, numIsolated, numIslands);
+    }
+
+    /**
+     * Starts a group for every cell of a row that has a count of 0
+     * or is isolated, i.e. it is a numbered cell without a bomb and
+     * with no neighbour that has a count of 0, and joins it to the
+     * groups of the cells before it.
+     * <p>
+     * A cell with a count of 0 is never next to an isolated cell,
+     * so neighbouring cells that both have a group always belong to
+     * the same opening or island.
+     *
+     * @param rows      rows around the row
+     * @param joinAbove true if the row above is in the same stripe
+     */
+    private void labelRow(int row, Rows rows, boolean joinAbove) {
+        int[] above = rows.above;
+        int[] current = rows.current;
+        int[] below = rows.below;
+        boolean[] bombs = rows.bombs;
+        int last = this.numColumns - 1;
+        int base = row * this.numColumns;
+
+        for (int column = 0; column <= last; column++) {
+            int cell = base + column;
+            if (current[column] != 0) {
+                boolean isolated = !bombs[column];
+                int left = Math.max(column - 1, 0);
+                int right = Math.min(column + 1, last);
+                for (int c = left; isolated && c <= right; c++) {
+                    isolated = current[c] != 0 && (above == null || above[c] != 0) && (below == null || below[c] != 0);
+                }
+                if (!isolated) {
+                    this.parent[cell] = NONE;
+                    continue;
+                }
+            }
+            this.parent[cell] = -1;
+
+            boolean hasLeft = column > 0 && this.parent[cell - 1] != NONE;
+            if (!joinAbove) {
+                if (hasLeft) this.union(cell, cell - 1);
+                continue;
+            }
+            int top = cell - this.numColumns;
+            if (this.parent[top] != NONE) {
+                //the cells to the left, top-left and top-right have already been joined to the one on top
+                this.union(cell, top);
+                continue;
+            }
+            //the cell to the top-left has already been joined to the one to the left
+            if (hasLeft) this.union(cell, cell - 1);
+            else if (column > 0 && this.parent[top - 1] != NONE) this.union(cell, top - 1);
+            if (column < last && this.parent[top + 1] != NONE) this.union(cell, top + 1);
+        }
+    }
+
+    /**
+     * Joins every cell of a row that has a group to the
+     * cells with a group in the row above.
+     */
+    private void joinAbove(int row) {
+        int base = row * this.numColumns;
+        for (int column = 0; column < this.numColumns; column++) {
+            int cell = base + column;
+            if (this.parent[cell] == NONE) continue;
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, this.numColumns - 1); c++) {
+                int neighbour = cell - this.numColumns + c - column;
+                if (this.parent[neighbour] != NONE) this.union(cell, neighbour);
+            }
+        }
+    }
+
+    /**
+     * Counts the openings, isolated cells and islands in a stripe,
+     * and adds each numbered cell around an opening to the size of
+     * that opening.
+     *
+     * @param shared true if other stripes are being counted at the same time
+     * @return what was counted in the stripe
+     */
+    private Stripe countRows(int startRow, int endRow, boolean shared) {
+        Stripe stripe = new Stripe();
+        int[] roots = new int[8];
+        //root of the opening of each cell with a count of 0 in the rows around the current one, or -1,
+        //with a -1 on each side so the neighbours of the first and last column can be read without checks
+        Rows rows = new Rows(startRow);
+        int[] openingsAbove = this.openingRow(startRow - 1, rows.above, null);
+        int[] openingsCurrent = this.openingRow(startRow, rows.current, null);
+        int[] openingsBelow = this.openingRow(startRow + 1, rows.below, null);
+
+        for (int row = startRow; row < endRow; row++) {
+            int[] current = rows.current;
+            boolean[] bombs = rows.bombs;
+            int base = row * this.numColumns;
+            for (int column = 0; column < this.numColumns; column++) {
+                int cell = base + column;
+                int parent = this.parent[cell];
+                if (parent != NONE) {
+                    boolean root = parent < 0;
+                    if (current[column] == 0) {
+                        if (root) stripe.addOpening(cell);
+                    } else {
+                        stripe.numIsolated++;
+                        if (root) stripe.numIslands++;
+                    }
+                } else if (!bombs[column]) {
+                    //a numbered cell around one or more openings
+                    int numRoots = 0;
+                    for (int c = column; c <= column + 2; c++) {
+                        numRoots = addRoot(roots, numRoots, openingsAbove[c]);
+                        numRoots = addRoot(roots, numRoots, openingsCurrent[c]);
+                        numRoots = addRoot(roots, numRoots, openingsBelow[c]);
+                    }
+                    for (int k = 0; k < numRoots; k++) {
+                        //openings can reach into other stripes, so their sizes are changed atomically
+                        if (shared) PARENT.getAndAdd(this.parent, roots[k], -1);
+                        else this.parent[roots[k]]--;
+                    }
+                }
+            }
+
+            //move down a row, reusing the row above as the next row below
+            rows.next();
+            int[] reused = openingsAbove;
+            openingsAbove = openingsCurrent;
+            openingsCurrent = openingsBelow;
+            openingsBelow = this.openingRow(row + 2, rows.below, reused);
+        }
+        return stripe;
+    }
+
+    /**
+     * Finds the root of the opening of every cell in a row
+     * that has a count of 0.
+     *
+     * @param row     row index, which may be outside the board
+     * @param current counts of the row, or null if it is outside the board
+     * @param reused  array to fill in, or null to create one
+     * @return the root of the opening of each cell, or -1 for cells
+     * without a count of 0, with a -1 added on each side of the row
+     */
+    private int[] openingRow(int row, int[] current, int[] reused) {
+        int[] openings = reused == null ? new int[this.numColumns + 2] : reused;
+        Arrays.fill(openings, -1);
+        if (current == null) return openings;
+        int base = row * this.numColumns;
+        for (int column = 0; column < this.numColumns; column++) {
+            if (current[column] == 0) openings[column + 1] = this.find(base + column);
+        }
+        return openings;
+    }
+
+    /**
+     * Adds a root to the roots found so far, unless it
+     * is -1 or has already been found.
+     *
+     * @return number of roots found so far
+     */
+    private static int addRoot(int[] roots, int numRoots, int root) {
+        if (root < 0) return numRoots;
+        for (int k = 0; k < numRoots; k++) {
+            if (roots[k] == root) return numRoots;
+        }
+        roots[numRoots] = root;
+        return numRoots + 1;
+    }
+
+    /**
+     * Analyzes a board on any topology in a single stripe,
+     * joining each cell to its neighbours with smaller indices.
+     */
+    private Analysis analyzeTopology() {
+        Topology topology = this.topology;
+        int numCells = this.parent.length;
+        int[] flatCounts = new int[numCells];
+        for (int i = 0; i < numCells; i++) flatCounts[i] = this.counts[i / this.numColumns][i % this.numColumns];
+        int[] neighbours = new int[topology.getMaxDegree()];
+
+        for (int i = 0; i < numCells; i++) {
+            boolean inGroup = flatCounts[i] == 0 || !this.bombs[i / this.numColumns][i % this.numColumns];
+            int degree = topology.neighbours(i, neighbours);
+            for (int k = 0; k < degree && inGroup && flatCounts[i] != 0; k++) inGroup = flatCounts[neighbours[k]] != 0;
+            this.parent[i] = inGroup ? -1 : NONE;
+        }
+
+        for (int i = 0; i < numCells; i++) {
+            if (this.parent[i] == NONE) continue;
+            int degree = topology.neighbours(i, neighbours);
+            for (int k = 0; k < degree; k++) {
+                int neighbour = neighbours[k];
+                if (neighbour < i && this.parent[neighbour] != NONE) this.union(i, neighbour);
+            }
+        }
+
+        int numOpenings = 0;
+        int numIsolated = 0;
+        int numIslands = 0;
+        int[] roots = new int[neighbours.length];
+        for (int i = 0; i < numCells; i++) {
+            if (this.parent[i] != NONE) {
+                if (flatCounts[i] == 0) {
+                    if (this.parent[i] < 0) numOpenings++;
+                } else {
+                    numIsolated++;
+                    if (this.parent[i] < 0) numIslands++;
+                }
+            } else if (!this.bombs[i / this.numColumns][i % this.numColumns]) {
+                int numRoots = 0;
+                int degree = topology.neighbours(i, neighbours);
+                for (int k = 0; k < degree; k++) {
+                    if (flatCounts[neighbours[k]] != 0) continue;
+                    int opening = this.find(neighbours[k]);
+                    boolean seen = false;
+                    for (int j = 0; j < numRoots && !seen; j++) seen = roots[j] == opening;
+                    if (!seen) roots[numRoots++] = opening;
+                }
+                for (int k = 0; k < numRoots; k++) this.parent[roots[k]]--;
+            }
+        }
+
+        int[] openingSizes = new int[numOpenings];
+        int next = 0;
+        for (int i = 0; i < numCells; i++) {
+            if (this.parent[i] < 0 && this.parent[i] != NONE && flatCounts[i] == 0) openingSizes[next++] = -this.parent[i];
+        }
+        return new Analysis(openingSizes, numIsolated, numIslands);
+    }
+
+    /**
+     * Rows of counts and bombs around the row a stripe is at,
+     * moving down one row at a time. For a {@link BombGrid} these
+     * are its own arrays; other boards are read through
+     * {@link BoardView} into three rows that are reused.
+     */
+    private final class Rows {
+        private int row;
+        private int[] above; //null above the first row
+        private int[] current;
+        private int[] below; //null below the last row
+        private boolean[] bombs; //bombs of the current row
+        private int[] spare; //row to read into while there is no row above
+
+        private Rows(int row) {
+            this.row = row;
+            if (BoardAnalyzer.this.counts != null) {
+                this.point();
+                return;
+            }
+            int numColumns = BoardAnalyzer.this.numColumns;
+            this.above = row > 0 ? this.readCounts(row - 1, new int[numColumns]) : null;
+            this.current = this.readCounts(row, new int[numColumns]);
+            this.below = row < numRows - 1 ? this.readCounts(row + 1, new int[numColumns]) : null;
+            this.bombs = this.readBombs(row, new boolean[numColumns]);
+            this.spare = new int[numColumns];
+        }
+
+        /**
+         * Moves down a row. Once past the last row of the
+         * board, only the row below is kept, which is null.
+         */
+        private void next() {
+            this.row++;
+            if (this.row >= numRows) {
+                this.below = null;
+                return;
+            }
+            if (BoardAnalyzer.this.counts != null) {
+                this.point();
+                return;
+            }
+            //reuse the row above as the next row below
+            int[] reused = this.above != null ? this.above : this.spare;
+            this.above = this.current;
+            this.current = this.below;
+            this.below = this.row < numRows - 1 ? this.readCounts(this.row + 1, reused) : null;
+            this.readBombs(this.row, this.bombs);
+        }
+
+        private void point() {
+            int[][] counts = BoardAnalyzer.this.counts;
+            this.above = this.row > 0 ? counts[this.row - 1] : null;
+            this.current = counts[this.row];
+            this.below = this.row < numRows - 1 ? counts[this.row + 1] : null;
+            this.bombs = BoardAnalyzer.this.bombs[this.row];
+        }
+
+        private int[] readCounts(int row, int[] counts) {
+            for (int column = 0; column < counts.length; column++) counts[column] = board.getCountAtLocation(row, column);
+            return counts;
+        }
+
+        private boolean[] readBombs(int row, boolean[] bombs) {
+            for (int column = 0; column < bombs.length; column++) bombs[column] = board.isBombAtLocation(row, column);
+            return bombs;
+        }
+    }
+
+    /**
+     * Finds the root of the group of a cell, halving the
+     * path to it along the way.
+     * <p>
+     * NOTE: Stripes may call this at the same time once all groups
+     * have been joined. That is safe since a cell is only ever made
+     * to point further up its own path.
+     */
+    private int find(int cell) {
+        int parent = this.parent[cell];
+        while (parent >= 0) {
+            int grandparent = this.parent[parent];
+            if (grandparent < 0) return parent;
+            this.parent[cell] = grandparent;
+            cell = grandparent;
+            parent = this.parent[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Joins the groups of two cells, keeping the cell with the
+     * smaller index as the root so that roots are found early
+     * when the cells are visited in order.
+     */
+    private void union(int a, int b) {
+        a = this.find(a);
+        b = this.find(b);
+        if (a == b) return;
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        this.parent[a] += this.parent[b];
+        this.parent[b] = a;
+    }
+
+    /**
+     * What was counted in a stripe of rows.
+     */
+    private static final class Stripe {
+        private int[] openings = new int[16]; //root of each opening
+        private int numOpenings;
+        private int numIsolated;
+        private int numIslands;
+
+        private void addOpening(int root) {
+            if (this.numOpenings == this.openings.length) this.openings = Arrays.copyOf(this.openings, this.numOpenings * 2);
+            this.openings[this.numOpenings++] = root;
+        }
+    }
+
+    /**
+     * Result of analyzing a board.
+     */
+    public static final class Analysis {
+        private final int[] openingSizes; //largest first
+        private final int numIsolatedCells;
+        private final int numIslands;
+
+        private Analysis(int[] openingSizes, int numIsolatedCells, int numIslands) {
+            Arrays.sort(openingSizes);
+            for (int i = 0, j = openingSizes.length - 1; i < j; i++, j--) {
+                int swap = openingSizes[i];
+                openingSizes[i] = openingSizes[j];
+                openingSizes[j] = swap;
+            }
+            this.openingSizes = openingSizes;
+            this.numIsolatedCells = numIsolatedCells;
+            this.numIslands = numIslands;
+        }
+
+        /**
+         * Gets the 3BV of the board, which is the smallest
+         * number of clicks that reveals every cell without a bomb.
+         *
+         * @return number of openings plus number of isolated cells
+         */
+        public long get3BV() {
+            return (long) this.openingSizes.length + this.numIsolatedCells;
+        }
+
+        /**
+         * Gets the smallest number of clicks that solves the board
+         * without placing flags, which is the same as its 3BV.
+         *
+         * @return smallest number of clicks that solves the board
+         * @see #get3BV()
+         */
+        public long getMinimumClicks() {
+            return this.get3BV();
+        }
+
+        /**
+         * Getter for the number of openings.
+         *
+         * @return number of groups of connected cells with a count of 0
+         */
+        public int getNumOpenings() {
+            return this.openingSizes.length;
+        }
+
+        /**
+         * Gets the number of cells revealed by clicking each
+         * opening, including the numbered cells around it.
+         *
+         * @return copy of the sizes of the openings, largest first
+         */
+        public int[] getOpeningSizes() {
+            return this.openingSizes.clone();
+        }
+
+        /**
+         * Gets the number of cells revealed by the largest opening.
+         *
+         * @return size of the largest opening, or 0 if there are none
+         */
+        public int getLargestOpening() {
+            return this.openingSizes.length == 0 ? 0 : this.openingSizes[0];
+        }
+
+        /**
+         * Getter for the number of isolated cells, i.e. numbered
+         * cells without a bomb that no opening reveals.
+         *
+         * @return number of isolated cells
+         */
+        public int getNumIsolatedCells() {
+            return this.numIsolatedCells;
+        }
+
+        /**
+         * Getter for the number of islands, i.e. groups of
+         * isolated cells that touch each other.
+         *
+         * @return number of islands
+         */
+        public int getNumIslands() {
+            return this.numIslands;
+        }
+
+        @Override
+        public String toString() {
+            return "com.nathanaelg.cmp168.minesweeper.BoardAnalyzer.Analysis{" +
+                    "3BV=" + get3BV() +
+                    ", openings=" + getNumOpenings() +
+                    ", largestOpening=" + getLargestOpening() +
+                    ", isolatedCells=" + numIsolatedCells +
+                    ", islands=" + numIslands +
+                    '}';
+        }
+    }
+}
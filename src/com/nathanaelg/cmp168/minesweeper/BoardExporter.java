@@ -0,0 +1,461 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool that generates many {@link BombGrid}s
+ * and writes them to a file, e.g. to build datasets of puzzles.
+ * It does not need JavaFX.
+ * <p>
+ * Boards are generated in batches by a pool of threads. Each batch
+ * is encoded into its own buffer, and a single writer thread writes
+ * the buffers out in order. At most a few batches per thread are
+ * waiting to be written at any time; once that limit is reached,
+ * no more batches are started until the writer catches up.
+ * <p>
+ * Each batch reuses a single board, placing the bombs the same way
+ * {@link BombGrid} does, so generating a board allocates nothing.
+ * Counts are only computed for formats that write them.
+ * <p>
+ * Board {@code i} is generated with the seed {@code seed + i}, so
+ * the output only depends on the arguments and not on the number
+ * of threads.
+ * <p>
+ * Usage:
+ * <pre>
+ * java com.nathanaelg.cmp168.minesweeper.BoardExporter --count N
+ *     [--level EASY|REGULAR|HARD | --rows R --columns C --bombs B]
+ *     [--seed S] [--format binary|text|ndjson] [--out FILE] [--threads T]
+ * </pre>
+ */
+public class BoardExporter {
+    private static final int BATCH_SIZE = 1024; //boards encoded into each buffer
+    private static final int BATCHES_PER_THREAD = 4; //batches waiting to be written before generation pauses
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final int numRows;
+    private final int numColumns;
+    private final int numBombs;
+    private final Format format;
+    private final int numThreads;
+
+    /**
+     * Output formats supported by the exporter.
+     */
+    public enum Format {
+        /**
+         * For every board: rows, columns and bombs as big-endian
+         * ints, the seed as a big-endian long, then one bit per
+         * cell in row-major order (1 if the cell has a bomb), packed
+         * eight cells per byte starting from the most significant bit.
+         * Counts are not stored since they follow from the bombs.
+         */
+        BINARY {
+            @Override
+            void encode(BoardView board, long seed, Buffer out) {
+                out.writeInt(board.getNumRows());
+                out.writeInt(board.getNumColumns());
+                out.writeInt(Math.toIntExact(board.getTotalBombs()));
+                out.writeLong(seed);
+                int bits = 0;
+                int numBits = 0;
+                for (int i = 0; i < board.getNumRows(); i++) {
+                    for (int j = 0; j < board.getNumColumns(); j++) {
+                        bits = (bits << 1) | (board.isBombAtLocation(i, j) ? 1 : 0);
+                        if (++numBits == 8) {
+                            out.writeByte(bits);
+                            bits = 0;
+                            numBits = 0;
+                        }
+                    }
+                }
+                if (numBits > 0) out.writeByte(bits << (8 - numBits));
+            }
+        },
+        /**
+         * For every board: a header line with the seed and size,
+         * then the bomb grid and count grid side-by-side as displayed
+         * by {@link BombGrid}, then an empty line.
+         */
+        TEXT {
+            @Override
+            void encode(BoardView board, long seed, Buffer out) {
+                StringBuilder builder = out.text();
+                builder.append("# seed=").append(seed)
+                        .append(" rows=").append(board.getNumRows())
+                        .append(" columns=").append(board.getNumColumns())
+                        .append(" bombs=").append(board.getTotalBombs()).append('\n');
+                BombGrid.appendGrids(board, builder);
+                builder.append('\n');
+                out.writeText();
+            }
+        },
+        /**
+         * One JSON object per line with the seed, the size, the flat
+         * indices of the cells with bombs, and the counts of every cell
+         * as a string of digits in row-major order.
+         */
+        NDJSON {
+            @Override
+            void encode(BoardView board, long seed, Buffer out) {
+                StringBuilder builder = out.text();
+                builder.append("{\"seed\":").append(seed)
+                        .append(",\"rows\":").append(board.getNumRows())
+                        .append(",\"columns\":").append(board.getNumColumns())
+                        .append(",\"bombs\":").append(board.getTotalBombs())
+                        .append(",\"mines\":[");
+                boolean first = true;
+                for (int i = 0; i < board.getNumRows(); i++) {
+                    for (int j = 0; j < board.getNumColumns(); j++) {
+                        if (!board.isBombAtLocation(i, j)) continue;
+                        if (!first) builder.append(',');
+                        builder.append((long) i * board.getNumColumns() + j);
+                        first = false;
+                    }
+                }
+                builder.append("],\"counts\":\"");
+                for (int i = 0; i < board.getNumRows(); i++) {
+                    for (int j = 0; j < board.getNumColumns(); j++) {
+                        builder.append((char) ('0' + board.getCountAtLocation(i, j)));
+                    }
+                }
+                builder.append("\"}\n");
+                out.writeText();
+            }
+        };
+
+        /**
+         * Appends one board to the buffer.
+         *
+         * @param board board to encode
+         * @param seed  seed the board was generated with
+         * @param out   buffer the board is appended to
+         */
+        abstract void encode(BoardView board, long seed, Buffer out);
+    }
+
+    /**
+     * Creates an exporter for boards of the given size.
+     *
+     * @param numRows    number of rows of every board
+     * @param numColumns number of columns of every board
+     * @param numBombs   number of bombs of every board
+     * @param format     format the boards are written in
+     * @param numThreads number of threads generating boards
+     */
+    public BoardExporter(int numRows, int numColumns, int numBombs, Format format, int numThreads) {
+        if (numRows <= 0 || numColumns <= 0) throw new IllegalArgumentException("board dimensions must be positive");
+        if (numBombs < 0 || (long) numRows * numColumns < numBombs)
+            throw new IllegalArgumentException("number of bombs must be between 0 and the number of cells");
+        if (numThreads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numBombs = numBombs;
+        this.format = format;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Generates boards and writes them to the stream passed as
+     * an argument. The stream is flushed but not closed.
+     *
+     * @param count number of boards to generate
+     * @param seed  seed of the first board; board i uses {@code seed + i}
+     * @param out   stream the boards are written to
+     * @throws IOException          if the boards cannot be written
+     * @throws InterruptedException if the thread is interrupted while exporting
+     */
+    public void export(long count, long seed, OutputStream out) throws IOException, InterruptedException {
+        ExecutorService generators = Executors.newFixedThreadPool(this.numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "board-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Future<Buffer>> pending = new ArrayBlockingQueue<>(this.numThreads * BATCHES_PER_THREAD);
+        Future<Buffer> endOfBoards = CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        Thread writerThread = new Thread(() -> {
+            try {
+                OutputStream writer = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+                for (Future<Buffer> batch = pending.take(); batch != endOfBoards; batch = pending.take()) {
+                    batch.get().writeTo(writer);
+                }
+                writer.flush();
+                written.complete(null);
+            } catch (IOException | ExecutionException e) {
+                written.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                written.cancel(false);
+            }
+        }, "board-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        try {
+            for (long first = 0; first < count && !written.isDone(); first += BATCH_SIZE) {
+                long firstBoard = first;
+                int size = (int) Math.min(BATCH_SIZE, count - first);
+                put(pending, generators.submit(() -> this.generate(seed + firstBoard, size)), written);
+            }
+            put(pending, endOfBoards, written);
+            written.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            writerThread.interrupt();
+            generators.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds a batch to the queue of batches waiting to be written,
+     * waiting while the queue is full, unless the writer has stopped.
+     */
+    private static void put(BlockingQueue<Future<Buffer>> pending, Future<Buffer> batch, Future<Void> written)
+            throws InterruptedException {
+        while (!written.isDone()) {
+            if (pending.offer(batch, 100, TimeUnit.MILLISECONDS)) return;
+        }
+    }
+
+    private Buffer generate(long firstSeed, int size) {
+        Buffer buffer = new Buffer();
+        ReusableBoard board = new ReusableBoard(this.numRows, this.numColumns, this.numBombs);
+        Random random = new Random();
+        for (int i = 0; i < size; i++) {
+            random.setSeed(firstSeed + i);
+            board.generate(random);
+            this.format.encode(board, firstSeed + i, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Runs the exporter from the command line.
+     *
+     * @param args command line arguments, see the class description
+     */
+    public static void main(String[] args) {
+        long count = -1;
+        long seed = System.nanoTime();
+        int numRows = DifficultyLevel.HARD.getRows();
+        int numColumns = DifficultyLevel.HARD.getColumns();
+        int numBombs = DifficultyLevel.HARD.getBombs();
+        Format format = Format.BINARY;
+        String outPath = "-";
+        int numThreads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--count":
+                        count = Long.parseLong(value);
+                        break;
+                    case "--level":
+                        DifficultyLevel level = DifficultyLevel.valueOf(value.toUpperCase(Locale.ROOT));
+                        numRows = level.getRows();
+                        numColumns = level.getColumns();
+                        numBombs = level.getBombs();
+                        break;
+                    case "--rows":
+                        numRows = Integer.parseInt(value);
+                        break;
+                    case "--columns":
+                        numColumns = Integer.parseInt(value);
+                        break;
+                    case "--bombs":
+                        numBombs = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--format":
+                        format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--out":
+                        outPath = value;
+                        break;
+                    case "--threads":
+                        numThreads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (count < 0) throw new IllegalArgumentException("--count is required");
+
+            BoardExporter exporter = new BoardExporter(numRows, numColumns, numBombs, format, numThreads);
+            long start = System.nanoTime();
+            if (outPath.equals("-")) {
+                exporter.export(count, seed, System.out);
+            } else {
+                try (OutputStream out = new FileOutputStream(outPath)) {
+                    exporter.export(count, seed, out);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (count == 0) System.err.printf("0 boards in %.2f s%n", seconds);
+            else System.err.printf("%d boards in %.2f s (%.0f boards/s)%n", count, seconds, count / seconds);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BoardExporter --count N [--level EASY|REGULAR|HARD | --rows R --columns C --bombs B]"
+                    + " [--seed S] [--format binary|text|ndjson] [--out FILE] [--threads T]");
+            System.exit(2);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Board on the square grid that is generated again for every
+     * board of a batch. The bombs are placed exactly like
+     * {@link BombGrid} places them, so the boards are the same as
+     * the BombGrids generated with the same seeds.
+     */
+    private static final class ReusableBoard implements BoardView {
+        private final int numRows;
+        private final int numColumns;
+        private final int numBombs;
+        private final boolean[] bombs; //flat index of each cell
+        private final int[] bombCells; //flat index of each bomb, so the bombs can be removed for the next board
+        private final int[] counts;
+        private final BoxSum.BombRows bombRows;
+        private final BoxSum.CountRows countRows;
+        private boolean counted; //whether the counts match the bombs
+
+        private ReusableBoard(int numRows, int numColumns, int numBombs) {
+            this.numRows = numRows;
+            this.numColumns = numColumns;
+            this.numBombs = numBombs;
+            this.bombs = new boolean[numRows * numColumns];
+            this.bombCells = new int[numBombs];
+            this.counts = new int[numRows * numColumns];
+            this.bombRows = (row, bombs) -> {
+                int base = row * numColumns;
+                for (int j = 0; j < numColumns; j++) bombs[j] = this.bombs[base + j] ? 1 : 0;
+            };
+            this.countRows = (row, counts) -> System.arraycopy(counts, 0, this.counts, row * numColumns, numColumns);
+        }
+
+        private void generate(Random random) {
+            for (int cell : this.bombCells) this.bombs[cell] = false;
+            int count = 0;
+            while (count < this.numBombs) {
+                int row = random.nextInt(this.numRows);
+                int column = random.nextInt(this.numColumns);
+
+                int cell = row * this.numColumns + column;
+                if (!this.bombs[cell]) {
+                    this.bombs[cell] = true;
+                    this.bombCells[count++] = cell;
+                }
+            }
+            this.counted = false;
+        }
+
+        @Override
+        public int getNumRows() {
+            return this.numRows;
+        }
+
+        @Override
+        public int getNumColumns() {
+            return this.numColumns;
+        }
+
+        @Override
+        public long getNumCells() {
+            return (long) this.numRows * this.numColumns;
+        }
+
+        @Override
+        public long getTotalBombs() {
+            return this.numBombs;
+        }
+
+        @Override
+        public boolean isBombAtLocation(int row, int column) {
+            return this.bombs[row * this.numColumns + column];
+        }
+
+        @Override
+        public int getCountAtLocation(int row, int column) {
+            if (!this.counted) {
+                BoxSum.count(this.numRows, this.numColumns, this.bombRows, this.countRows);
+                this.counted = true;
+            }
+            return this.counts[row * this.numColumns + column];
+        }
+    }
+
+    /**
+     * Growable buffer that a batch of boards is encoded into.
+     */
+    static final class Buffer {
+        private final StringBuilder text = new StringBuilder();
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        private void ensureCapacity(int extra) {
+            if (this.size + extra > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            this.bytes[this.size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) this.bytes[this.size++] = (byte) (value >>> shift);
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) this.bytes[this.size++] = (byte) (value >>> shift);
+        }
+
+        /**
+         * Gets an empty builder to append text to. The text
+         * is added to the buffer by {@link #writeText()}.
+         */
+        StringBuilder text() {
+            this.text.setLength(0);
+            return this.text;
+        }
+
+        /**
+         * Adds the text appended to {@link #text()} to the buffer.
+         * Only ASCII text is supported.
+         */
+        void writeText() {
+            int length = this.text.length();
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) this.bytes[this.size++] = (byte) this.text.charAt(i);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(this.bytes, 0, this.size);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers which cells were revealed and flagged after
+ * every move of a game, so moves can be undone and redone.
+ * <p>
+ * Each version of the board is a pair of {@link PersistentBitSet}s
+ * (revealed cells and flagged cells) sharing their structure with
+ * the previous version, together with the list of cells the move
+ * changed. Keeping a version therefore costs memory in proportion
+ * to the cells it changed, and undoing or redoing a move only needs
+ * to touch those cells.
+ * <p>
+ * Changes are recorded as they happen with {@link #revealed(int)}
+ * and {@link #flagged(int, boolean)}, and grouped into a single move
+ * by {@link #commit()}.
+ */
+public class BoardHistory {
+    /**
+     * Largest number of moves kept. Older moves can no longer be undone.
+     */
+    public static final int MAX_MOVES = 10_000;
+
+    private final List<Version> versions;
+    private final Version initial; //version before the first move, where no cell is revealed or flagged
+    private final int numCells;
+    private int position; //index of the current version
+    private PersistentBitSet.Editor revealedEditor; //changes of the move being recorded, if any
+    private PersistentBitSet.Editor flaggedEditor;
+    private int[] changed;
+    private int numChanged;
+
+    /**
+     * Creates a history for a board with the given number
+     * of cells, where no cell is revealed or flagged.
+     *
+     * @param numCells number of cells on the board
+     */
+    public BoardHistory(int numCells) {
+        this.numCells = numCells;
+        this.initial = new Version(PersistentBitSet.empty(numCells), PersistentBitSet.empty(numCells), new int[0]);
+        this.versions = new ArrayList<>();
+        this.versions.add(this.initial);
+        this.changed = new int[16];
+    }
+
+    /**
+     * Forgets every move, so the history can be used for
+     * a new game on a board with the same number of cells.
+     * The list of versions and the buffer of changed cells
+     * are kept, so this does not allocate.
+     */
+    public void clear() {
+        this.versions.clear();
+        this.versions.add(this.initial);
+        this.position = 0;
+        this.revealedEditor = null;
+        this.flaggedEditor = null;
+        this.numChanged = 0;
+    }
+
+    /**
+     * Getter for the number of cells on the board.
+     *
+     * @return number of cells on the board
+     */
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * Records that a cell has been revealed as part
+     * of the move being recorded.
+     *
+     * @param cell flat index of the cell
+     */
+    public void revealed(int cell) {
+        this.begin();
+        this.revealedEditor.set(cell, true);
+        this.addChanged(cell);
+    }
+
+    /**
+     * Records that a flag has been placed on or removed
+     * from a cell as part of the move being recorded.
+     *
+     * @param cell    flat index of the cell
+     * @param hasFlag true if the cell now has a flag
+     */
+    public void flagged(int cell, boolean hasFlag) {
+        this.begin();
+        this.flaggedEditor.set(cell, hasFlag);
+        this.addChanged(cell);
+    }
+
+    private void begin() {
+        if (this.revealedEditor != null) return;
+        Version current = this.versions.get(this.position);
+        this.revealedEditor = current.revealed.edit();
+        this.flaggedEditor = current.flagged.edit();
+        this.numChanged = 0;
+    }
+
+    private void addChanged(int cell) {
+        if (this.numChanged == this.changed.length) this.changed = Arrays.copyOf(this.changed, this.numChanged * 2);
+        this.changed[this.numChanged++] = cell;
+    }
+
+    /**
+     * Ends the move being recorded and makes it the current
+     * version. Moves that were undone can no longer be redone.
+     * Does nothing if no changes were recorded.
+     */
+    public void commit() {
+        if (this.revealedEditor == null) return;
+        this.versions.subList(this.position + 1, this.versions.size()).clear();
+        this.versions.add(new Version(this.revealedEditor.toPersistent(), this.flaggedEditor.toPersistent(),
+                Arrays.copyOf(this.changed, this.numChanged)));
+        this.revealedEditor = null;
+        this.flaggedEditor = null;
+        if (this.versions.size() > MAX_MOVES + 1) this.versions.remove(0);
+        this.position = this.versions.size() - 1;
+    }
+
+    /**
+     * Goes back to the version before the last move.
+     *
+     * @return flat indices of the cells changed by the move that
+     * was undone, or null if there is nothing to undo
+     */
+    public int[] undo() {
+        this.commit();
+        if (this.position == 0) return null;
+        return this.versions.get(this.position--).changed;
+    }
+
+    /**
+     * Goes forward to the version after the last move that was undone.
+     *
+     * @return flat indices of the cells changed by the move that
+     * was redone, or null if there is nothing to redo
+     */
+    public int[] redo() {
+        this.commit();
+        if (this.position == this.versions.size() - 1) return null;
+        return this.versions.get(++this.position).changed;
+    }
+
+    /**
+     * Determines whether a cell is revealed in the current version.
+     *
+     * @param cell flat index of the cell
+     * @return true if the cell is revealed
+     */
+    public boolean isRevealed(int cell) {
+        return this.versions.get(this.position).revealed.get(cell);
+    }
+
+    /**
+     * Determines whether a cell is flagged in the current version.
+     *
+     * @param cell flat index of the cell
+     * @return true if the cell has a flag
+     */
+    public boolean isFlagged(int cell) {
+        return this.versions.get(this.position).flagged.get(cell);
+    }
+
+    private static final class Version {
+        private final PersistentBitSet revealed;
+        private final PersistentBitSet flagged;
+        private final int[] changed; //cells changed by the move that led to this version
+
+        private Version(PersistentBitSet revealed, PersistentBitSet flagged, int[] changed) {
+            this.revealed = revealed;
+            this.flagged = flagged;
+            this.changed = changed;
+        }
+    }
+}
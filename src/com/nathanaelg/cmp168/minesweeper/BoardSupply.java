@@ -0,0 +1,297 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a few {@link BombGrid}s of every {@link DifficultyLevel}
+ * generated ahead of time, so a new game can start right away
+ * instead of waiting for its board to be generated.
+ * <p>
+ * Each level has a bounded queue of ready boards, filled by a pool
+ * of low-priority background threads. {@link #take(DifficultyLevel)}
+ * removes a ready board from the queue (a hit) or, if the queue is
+ * empty, generates one on the calling thread (a miss). Either way
+ * the queue is then refilled in the background.
+ * <p>
+ * The boards waiting in all queues together never take more than
+ * the memory given when the supply is created, as estimated by
+ * {@link #estimateBytes(int, int, int)}.
+ * <p>
+ * A supply keeping 0 boards per level does not prefetch at all:
+ * every board is generated on the thread that takes it.
+ */
+public final class BoardSupply {
+    /**
+     * When the queues of ready boards are filled.
+     */
+    public enum RefillPolicy {
+        /**
+         * The queues of every level are filled as soon as the
+         * supply is created, and refilled whenever a board is taken.
+         */
+        EAGER,
+        /**
+         * The queue of a level is only filled once a board of that
+         * level has been taken, and refilled whenever one is taken.
+         */
+        ON_DEMAND
+    }
+
+    /**
+     * Number of boards kept ready for each level by {@link #get()},
+     * unless the {@code minesweeper.prefetch} system property gives
+     * another number. 0 turns prefetching off.
+     */
+    public static final int DEFAULT_BOARDS_PER_LEVEL = readBoardsPerLevel();
+    /**
+     * Most memory the boards kept ready by {@link #get()} may take.
+     */
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+    private final Map<DifficultyLevel, Level> levels;
+    private final RefillPolicy policy;
+    private final long maxBytes;
+    private final AtomicLong queuedBytes; //estimated memory taken by the boards in all queues
+    private final ExecutorService workers;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Creates a supply of boards and, if the policy is
+     * {@link RefillPolicy#EAGER}, starts filling its queues.
+     *
+     * @param boardsPerLevel largest number of boards kept ready for each level, 0 to not prefetch any
+     * @param maxBytes       most memory the boards kept ready may take
+     * @param policy         when the queues are filled
+     * @param numThreads     number of background threads generating boards
+     */
+    public BoardSupply(int boardsPerLevel, long maxBytes, RefillPolicy policy, int numThreads) {
+        if (boardsPerLevel < 0) throw new IllegalArgumentException("number of boards per level must not be negative");
+        if (maxBytes < 0) throw new IllegalArgumentException("memory limit must not be negative");
+        if (numThreads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+        this.policy = policy;
+        this.maxBytes = maxBytes;
+        this.queuedBytes = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+
+        this.levels = new EnumMap<>(DifficultyLevel.class);
+        for (DifficultyLevel level : DifficultyLevel.values()) this.levels.put(level, new Level(level, boardsPerLevel));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "board-supply-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        if (policy == RefillPolicy.EAGER) {
+            for (Level level : this.levels.values()) this.refill(level);
+        }
+    }
+
+    /**
+     * Reads the number of boards to keep ready for each level from
+     * the {@code minesweeper.prefetch} system property. A negative
+     * number is reported and treated as 0, so a bad property turns
+     * prefetching off instead of keeping the game from starting.
+     */
+    private static int readBoardsPerLevel() {
+        int boardsPerLevel = Integer.getInteger("minesweeper.prefetch", 2);
+        if (boardsPerLevel >= 0) return boardsPerLevel;
+        System.err.println("minesweeper.prefetch must not be negative, was " + boardsPerLevel + "; not prefetching boards");
+        return 0;
+    }
+
+    /**
+     * Gets the supply used by the game, which keeps
+     * {@link #DEFAULT_BOARDS_PER_LEVEL} boards of every level
+     * ready using a single background thread.
+     *
+     * @return supply used by the game
+     */
+    public static BoardSupply get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Estimates how much memory a {@link BombGrid} takes:
+     * its bomb and count grids with the headers of their rows,
+     * and the location of each bomb.
+     *
+     * @param rows    number of rows
+     * @param columns number of columns
+     * @param bombs   number of bombs
+     * @return estimated number of bytes taken by the BombGrid
+     */
+    public static long estimateBytes(int rows, int columns, int bombs) {
+        long cells = (long) rows * columns;
+        long grids = cells * (1 + 4) + rows * 2L * 16;
+        long bombLocations = bombs * 24L;
+        return 128 + grids + bombLocations;
+    }
+
+    /**
+     * Takes a board of the given level, generating it
+     * on the calling thread if none is ready.
+     *
+     * @param difficultyLevel level of difficulty of the board
+     * @return new board that has not been played
+     */
+    public BombGrid take(DifficultyLevel difficultyLevel) {
+        Level level = this.levels.get(difficultyLevel);
+        level.requested = true;
+        BombGrid bombGrid = level.boards == null ? null : level.boards.poll();
+        boolean hit = bombGrid != null;
+        if (hit) {
+            this.queuedBytes.addAndGet(-level.bytesPerBoard);
+            this.hits.increment();
+        } else {
+            bombGrid = new BombGrid(difficultyLevel.getRows(), difficultyLevel.getColumns(), difficultyLevel.getBombs());
+            this.misses.increment();
+        }
+        Metrics.recordBoardSupply(hit);
+        this.refill(level);
+        return bombGrid;
+    }
+
+    /**
+     * Gets the number of boards of a level that are ready.
+     *
+     * @param difficultyLevel level of difficulty
+     * @return number of boards ready to be taken
+     */
+    public int getNumReady(DifficultyLevel difficultyLevel) {
+        BlockingQueue<BombGrid> boards = this.levels.get(difficultyLevel).boards;
+        return boards == null ? 0 : boards.size();
+    }
+
+    /**
+     * Gets the number of boards that were taken from a queue.
+     *
+     * @return number of boards that were ready when they were taken
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of boards that had to be generated when
+     * they were taken because none was ready.
+     *
+     * @return number of boards that were not ready when they were taken
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the estimated memory taken by the boards that are ready.
+     *
+     * @return estimated number of bytes taken by the boards that are ready
+     */
+    public long getQueuedBytes() {
+        return this.queuedBytes.get();
+    }
+
+    /**
+     * Stops generating boards. Boards that are ready can still
+     * be taken; once they run out every board is generated when
+     * it is taken.
+     */
+    public void shutdown() {
+        this.workers.shutdownNow();
+    }
+
+    /**
+     * Starts filling the queue of a level in the background,
+     * unless it is already being filled or the refill policy
+     * says it should not be filled yet.
+     */
+    private void refill(Level level) {
+        if (level.boards == null) return; //not prefetching
+        if (this.policy == RefillPolicy.ON_DEMAND && !level.requested) return;
+        if (!level.refilling.compareAndSet(false, true)) return;
+        try {
+            this.workers.execute(() -> this.fill(level));
+        } catch (RejectedExecutionException e) {
+            level.refilling.set(false); //the supply has been shut down
+        }
+    }
+
+    private void fill(Level level) {
+        DifficultyLevel difficultyLevel = level.difficultyLevel;
+        boolean full = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (level.boards.remainingCapacity() == 0) {
+                    full = true;
+                    break;
+                }
+                if (!this.reserve(level)) break; //out of memory, the next board taken makes room
+                try {
+                    level.boards.add(new BombGrid(difficultyLevel.getRows(), difficultyLevel.getColumns(),
+                            difficultyLevel.getBombs()));
+                } catch (RuntimeException e) {
+                    this.queuedBytes.addAndGet(-level.bytesPerBoard);
+                    throw e;
+                }
+            }
+        } finally {
+            level.refilling.set(false);
+        }
+        //a board may have been taken after the queue was found full but before it stopped being filled
+        if (full && level.boards.remainingCapacity() > 0) this.refill(level);
+    }
+
+    /**
+     * Reserves memory for one more board of a level in its queue.
+     *
+     * @return false if there is not enough memory left
+     */
+    private boolean reserve(Level level) {
+        long queued;
+        do {
+            queued = this.queuedBytes.get();
+            if (queued + level.bytesPerBoard > this.maxBytes) return false;
+        } while (!this.queuedBytes.compareAndSet(queued, queued + level.bytesPerBoard));
+        return true;
+    }
+
+    /**
+     * Queue of ready boards of a level of difficulty.
+     * Only one thread at a time fills it, so reserving memory
+     * and then adding a board never finds the queue full.
+     */
+    private static final class Level {
+        private final DifficultyLevel difficultyLevel;
+        private final BlockingQueue<BombGrid> boards; //null if no boards are kept ready
+        private final long bytesPerBoard;
+        private final AtomicBoolean refilling; //whether a background thread is filling the queue
+        private volatile boolean requested; //whether a board of this level has ever been taken
+
+        private Level(DifficultyLevel difficultyLevel, int capacity) {
+            this.difficultyLevel = difficultyLevel;
+            this.boards = capacity == 0 ? null : new ArrayBlockingQueue<>(capacity);
+            this.bytesPerBoard = estimateBytes(difficultyLevel.getRows(), difficultyLevel.getColumns(),
+                    difficultyLevel.getBombs());
+            this.refilling = new AtomicBoolean();
+        }
+    }
+
+    private static final class Holder {
+        private static final BoardSupply INSTANCE = new BoardSupply(DEFAULT_BOARDS_PER_LEVEL, DEFAULT_MAX_BYTES,
+                RefillPolicy.EAGER, 1);
+    }
+}
@@ -0,0 +1,65 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+/**
+ * Read-only view of the bombs and counts of a board,
+ * whichever way they are stored.
+ * <p>
+ * {@link BombGrid} keeps them in Java arrays, so its boards are
+ * limited to {@link Integer#MAX_VALUE} cells. {@link OffHeapBoard}
+ * keeps them outside of the Java heap, so its boards can have more
+ * cells than that; the number of cells and bombs are therefore longs.
+ */
+public interface BoardView {
+    /**
+     * Getter for the number of rows in the board
+     *
+     * @return number of rows in the board
+     */
+    int getNumRows();
+
+    /**
+     * Getter for the number of columns in the board
+     *
+     * @return number of columns in the board
+     */
+    int getNumColumns();
+
+    /**
+     * Gets the number of cells in the board, i.e. the number
+     * of rows multiplied by the number of columns.
+     *
+     * @return number of cells in the board
+     */
+    long getNumCells();
+
+    /**
+     * Gets the number of bombs in the board.
+     *
+     * @return number of bombs in the board
+     */
+    long getTotalBombs();
+
+    /**
+     * Checks if a bomb exists at the location given by
+     * the row and column passed in as arguments
+     *
+     * @param row    row index to check
+     * @param column column index to check
+     * @return true if a bomb is at the specified location,
+     * false otherwise
+     */
+    boolean isBombAtLocation(int row, int column);
+
+    /**
+     * Gets the number of bombs surrounding the cell given by
+     * the row and column passed in as arguments, including
+     * whether a bomb exists in the cell itself.
+     *
+     * @param row    row index to check
+     * @param column column index to check
+     * @return a value from 0-9 indicating the number of bombs surrounding
+     * the location being checked
+     * @see BombGrid#getCountAtLocation(int, int)
+     */
+    int getCountAtLocation(int row, int column);
+}
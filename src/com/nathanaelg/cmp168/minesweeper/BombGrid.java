@@ -1,5 +1,6 @@
 package com.nathanaelg.cmp168.minesweeper;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -10,15 +11,22 @@ import java.util.Random;
  * <p>
  * This class conforms to the UML diagram
  * given by the project specifications.
+ * <p>
+ * NOTE: The grids are Java arrays indexed by an int, so a BombGrid
+ * has at most {@link Integer#MAX_VALUE} cells. Larger boards can be
+ * stored in an {@link OffHeapBoard}, which has the same {@link BoardView}.
  */
 @SuppressWarnings("ManualArrayCopy")
-public class BombGrid {
+public class BombGrid implements BoardView {
+    private static final int BOX_SUM_DENSITY = 50; //boards with fewer than one bomb in this many cells count around each bomb
+
     private boolean[][] bombGrid;
     private int[][] countGrid;
     private int[][] bombLocations;
     private final int numRows;
     private final int numColumns;
     private final int numBombs;
+    private final Topology topology;
 
     /**
      * Creates a bomb grid with the default
@@ -26,11 +34,7 @@ public class BombGrid {
      * and 25 bombs.
      */
     public BombGrid() {
-        this.numRows = 10;
-        this.numColumns = 10;
-        this.numBombs = 25;
-        this.createBombGrid();
-        this.createCountGrid();
+        this(10, 10, 25);
     }
 
     /**
@@ -43,11 +47,7 @@ public class BombGrid {
      * @param numColumns number of columns in the grid
      */
     public BombGrid(int numRows, int numColumns) {
-        this.numRows = numRows;
-        this.numColumns = numColumns;
-        this.numBombs = 25;
-        this.createBombGrid();
-        this.createCountGrid();
+        this(numRows, numColumns, 25);
     }
 
     /**
@@ -59,11 +59,71 @@ public class BombGrid {
      * @param numBombs   total number of bombs in the grid
      */
     public BombGrid(int numRows, int numColumns, int numBombs) {
+        this(numRows, numColumns, numBombs, Topology.square8(numRows, numColumns));
+    }
+
+    /**
+     * Creates a bomb grid with the number of bombs,
+     * rows, and columns passed as arguments, where the
+     * count at each location is based on the neighbours
+     * given by the topology passed as an argument.
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @param numBombs   total number of bombs in the grid
+     * @param topology   describes which cells are neighbours of each other
+     * @see Topology
+     */
+    public BombGrid(int numRows, int numColumns, int numBombs, Topology topology) {
+        this(numRows, numColumns, numBombs, topology, new Random());
+    }
+
+    /**
+     * Creates a bomb grid with the number of bombs,
+     * rows, and columns passed as arguments, where the
+     * bombs are placed using the seed passed as an argument.
+     * Bomb grids created with the same seed and size are
+     * always the same.
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @param numBombs   total number of bombs in the grid
+     * @param seed       seed of the random number generator placing the bombs
+     */
+    public BombGrid(int numRows, int numColumns, int numBombs, long seed) {
+        this(numRows, numColumns, numBombs, Topology.square8(numRows, numColumns), new Random(seed));
+    }
+
+    /**
+     * Creates a bomb grid with the number of bombs,
+     * rows, and columns passed as arguments, where the
+     * count at each location is based on the neighbours
+     * given by the topology, and the bombs are placed using
+     * the random number generator passed as arguments.
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @param numBombs   total number of bombs in the grid
+     * @param topology   describes which cells are neighbours of each other
+     * @param random     random number generator used to place the bombs
+     * @see Topology
+     */
+    public BombGrid(int numRows, int numColumns, int numBombs, Topology topology, Random random) {
+        if (topology.getNumRows() != numRows || topology.getNumColumns() != numColumns)
+            throw new IllegalArgumentException("topology dimensions do not match the grid");
+        if (numBombs < 0 || numBombs > topology.getNumCells())
+            throw new IllegalArgumentException("number of bombs must be between 0 and the number of cells");
         this.numRows = numRows;
         this.numColumns = numColumns;
         this.numBombs = numBombs;
-        this.createBombGrid();
+        this.topology = topology;
+
+        long start = System.nanoTime();
+        Metrics.BoardGenerationEvent event = new Metrics.BoardGenerationEvent();
+        event.begin();
+        this.createBombGrid(random);
         this.createCountGrid();
+        Metrics.recordBoardGeneration(event, start, this);
     }
 
     /**
@@ -104,6 +164,7 @@ public class BombGrid {
      *
      * @return number of rows in the BombGrid
      */
+    @Override
     public int getNumRows() {
         return this.numRows;
     }
@@ -113,6 +174,7 @@ public class BombGrid {
      *
      * @return number of columns in the BombGrid
      */
+    @Override
     public int getNumColumns() {
         return this.numColumns;
     }
@@ -126,6 +188,38 @@ public class BombGrid {
         return this.numBombs;
     }
 
+    /**
+     * Gets the number of cells in the BombGrid,
+     * which is the same as its area.
+     *
+     * @return number of cells in the BombGrid
+     */
+    @Override
+    public long getNumCells() {
+        return (long) numRows * numColumns;
+    }
+
+    /**
+     * Gets the number of bombs in the BombGrid, which is
+     * the same as {@link #getNumBombs()}.
+     *
+     * @return number of bombs in the BombGrid
+     */
+    @Override
+    public long getTotalBombs() {
+        return this.numBombs;
+    }
+
+    /**
+     * Getter for the topology describing which cells
+     * of the BombGrid are neighbours of each other
+     *
+     * @return topology of the BombGrid
+     */
+    public Topology getTopology() {
+        return this.topology;
+    }
+
     /**
      * Checks the BombGrid to see if a bomb exists at the
      * location given by the row and column passed in as
@@ -136,10 +230,37 @@ public class BombGrid {
      * @return true if a bomb is at the specified location,
      * false otherwise
      */
+    @Override
     public boolean isBombAtLocation(int row, int column) {
         return this.bombGrid[row][column];
     }
 
+    /**
+     * Gets the rows of the count grid themselves rather than
+     * a copy, so large grids can be read without copying them.
+     * <p>
+     * NOTE: The arrays returned must not be modified.
+     *
+     * @return the count grid
+     * @see #getCountGrid()
+     */
+    int[][] getCountRows() {
+        return this.countGrid;
+    }
+
+    /**
+     * Gets the rows of the bomb grid themselves rather than
+     * a copy, so large grids can be read without copying them.
+     * <p>
+     * NOTE: The arrays returned must not be modified.
+     *
+     * @return the bomb grid
+     * @see #getBombGrid()
+     */
+    boolean[][] getBombRows() {
+        return this.bombGrid;
+    }
+
     /**
      * Gets the number of bombs surrounding the cell
      * given by the location specified by the row and
@@ -147,7 +268,8 @@ public class BombGrid {
      * a bomb exists in the cell itself.
      * <p>
      * The minimum number of bombs surrounding the cell is 0.
-     * The maximum number of bombs surrounding the cell is 8.
+     * The maximum number of bombs surrounding the cell is 8
+     * on the classic square grid (see {@link #getTopology()}).
      * <p>
      * NOTE: If a bomb exists at the cell specified by the row
      * and column passed as arguments, it will be included in the
@@ -164,6 +286,7 @@ public class BombGrid {
      * @return a value from 0-9 indicating the number of bombs surrounding
      * the location being checked
      */
+    @Override
     public int getCountAtLocation(int row, int column) {
         return this.countGrid[row][column];
     }
@@ -171,7 +294,8 @@ public class BombGrid {
     /**
      * Creates the count grid specifying the number of bombs surrounding
      * each cell in the BombGrid based on the bomb grid generated
-     * when the BombGrid was created.
+     * when the BombGrid was created. The surrounding cells are the
+     * neighbours given by the {@link Topology} of the BombGrid.
      * <p>
      * NOTE: If a bomb exists at a cell itself, it will be included in the
      * count. This means that a cell with a bomb that has no surrounding
@@ -179,6 +303,65 @@ public class BombGrid {
      */
     private void createCountGrid() {
         this.countGrid = new int[numRows][numColumns];
+        if (this.topology.getKind() == Topology.Kind.SQUARE_8) {
+            if (usesBoxSum(this.getArea(), numBombs)) this.createBoxSumCountGrid();
+            else this.createSquareCountGrid();
+            return;
+        }
+
+        int[] neighbours = new int[this.topology.getMaxDegree()];
+        for (int i = 0; i < numBombs; i++) {
+            int row = this.bombLocations[i][0];
+            int column = this.bombLocations[i][1];
+
+            this.countGrid[row][column] += 1;
+
+            int degree = this.topology.neighbours(this.topology.index(row, column), neighbours);
+            for (int k = 0; k < degree; k++) {
+                int neighbour = neighbours[k];
+                this.countGrid[neighbour / numColumns][neighbour % numColumns] += 1;
+            }
+        }
+    }
+
+    /**
+     * Counts the bombs again on the classic 8-connected square
+     * topology, either around each bomb or as a box sum, whichever
+     * way {@link #createCountGrid()} picked for this board. Lets
+     * {@link CountGridBenchmark} time both ways on the same board.
+     *
+     * @param boxSum true to count as a box sum, false to count around each bomb
+     * @throws IllegalStateException if this BombGrid is not on the square-8 topology
+     */
+    void recountSquare(boolean boxSum) {
+        if (this.topology.getKind() != Topology.Kind.SQUARE_8)
+            throw new IllegalStateException("only boards on the square-8 topology can be counted as a box sum");
+        for (int[] countRow : this.countGrid) Arrays.fill(countRow, 0);
+        if (boxSum) this.createBoxSumCountGrid();
+        else this.createSquareCountGrid();
+    }
+
+    /**
+     * Determines whether the counts of a board on the classic
+     * square grid are built as a box sum rather than around each bomb.
+     *
+     * @param numCells number of cells in the board
+     * @param numBombs number of bombs in the board
+     * @return true if the counts are built as a box sum
+     */
+    static boolean usesBoxSum(long numCells, long numBombs) {
+        //counting around each bomb only pays off when there are very few of them
+        return numBombs * BOX_SUM_DENSITY >= numCells;
+    }
+
+    /**
+     * Fills in the count grid for the classic 8-connected
+     * square topology. This is the same result the generic
+     * loop in {@link #createCountGrid()} would give, but the
+     * neighbours are addressed by row and column directly, which
+     * avoids converting flat indices back into rows and columns.
+     */
+    private void createSquareCountGrid() {
         for (int i = 0; i < numBombs; i++) {
             int row = this.bombLocations[i][0];
             int column = this.bombLocations[i][1];
@@ -203,15 +386,31 @@ public class BombGrid {
         }
     }
 
+    /**
+     * Fills in the count grid for the classic 8-connected
+     * square topology as a 3x3 box sum over the bomb grid
+     * (see {@link BoxSum}).
+     * <p>
+     * Unlike {@link #createSquareCountGrid()}, this takes the same
+     * time no matter how many bombs there are. On large boards with
+     * more than a handful of bombs it is several times faster.
+     */
+    private void createBoxSumCountGrid() {
+        BoxSum.count(numRows, numColumns, (row, bombs) -> {
+            boolean[] bombRow = this.bombGrid[row];
+            for (int j = 0; j < numColumns; j++) bombs[j] = bombRow[j] ? 1 : 0;
+        }, (row, counts) -> System.arraycopy(counts, 0, this.countGrid[row], 0, numColumns));
+    }
+
     /**
      * Generates a bomb grid based on the number of rows
      * and columns in this BombGrid. Bombs are assigned
      * to cells at random using the {@link Random} class.
      *
+     * @param random random number generator used to place the bombs
      * @see Random
      */
-    private void createBombGrid() {
-        Random random = new Random();
+    private void createBombGrid(Random random) {
         this.bombGrid = new boolean[this.numRows][this.numColumns];
         this.bombLocations = new int[numBombs][2];
 
@@ -256,9 +455,10 @@ public class BombGrid {
      * the number of rows by the number of columns.
      *
      * @return area of the BombGrid
+     * @throws ArithmeticException if the area does not fit in an int
      */
     public int getArea() {
-        return numRows * numColumns;
+        return Math.multiplyExact(numRows, numColumns);
     }
 
     /**
@@ -266,21 +466,34 @@ public class BombGrid {
      * on the console.
      */
     private void printGrids() {
-        for (int i = 0; i < numRows; i++) {
-            for (int j = 0; j < numColumns; j++) {
-                System.out.print((bombGrid[i][j] ? "T" : "F") + " ");
+        StringBuilder builder = new StringBuilder();
+        appendGrids(this, builder);
+        System.out.print(builder);
+        System.out.println();
+        System.out.println();
+    }
+
+    /**
+     * Appends the bomb grid and count grid of a board side-by-side
+     * to the builder passed as an argument, one line per row,
+     * the same way {@link #printGrids()} displays them.
+     *
+     * @param board   board whose grids are appended
+     * @param builder builder the grids are appended to
+     */
+    static void appendGrids(BoardView board, StringBuilder builder) {
+        for (int i = 0; i < board.getNumRows(); i++) {
+            for (int j = 0; j < board.getNumColumns(); j++) {
+                builder.append(board.isBombAtLocation(i, j) ? 'T' : 'F').append(' ');
             }
 
-            System.out.print("\t");
+            builder.append('\t');
 
-            for (int j = 0; j < numColumns; j++) {
-                System.out.print(countGrid[i][j] + " ");
+            for (int j = 0; j < board.getNumColumns(); j++) {
+                builder.append(board.getCountAtLocation(i, j)).append(' ');
             }
 
-            System.out.println();
+            builder.append('\n');
         }
-
-        System.out.println();
-        System.out.println();
     }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Counts the bombs around every cell of a board on the classic
+ * square grid as a 3x3 box sum, one row at a time, for boards
+ * whatever way their rows are stored.
+ * <p>
+ * Each row of bombs is read as 0s and 1s, the rows above, at and
+ * below each row are added up column by column, and each count is
+ * the sum of three neighbouring column sums. Only three rows of
+ * bombs are kept at a time, so this takes the same time no matter
+ * how many bombs there are.
+ * <p>
+ * NOTE: The C2 compiler of Java 17 only turns a loop into SIMD
+ * instructions if every array in it is read and written at the
+ * same index, since it cannot tell that arrays read at another
+ * index are not the one being written. So the column sums to the
+ * left and right of each cell are shifted into arrays of their own
+ * with {@link System#arraycopy}, and every loop adds arrays at the
+ * same index. {@link CountGridBenchmark} shows the difference by
+ * running it with and without {@code -XX:-UseSuperWord}.
+ */
+final class BoxSum {
+    private BoxSum() {
+    }
+
+    /**
+     * Reads the bombs of a row of a board.
+     */
+    @FunctionalInterface
+    interface BombRows {
+        /**
+         * Fills in the bombs of a row.
+         *
+         * @param row   row index
+         * @param bombs array to fill in with 1 for each cell with a bomb and 0 for the others
+         */
+        void read(int row, int[] bombs);
+    }
+
+    /**
+     * Stores the counts of a row of a board.
+     */
+    @FunctionalInterface
+    interface CountRows {
+        /**
+         * Stores the counts of a row.
+         *
+         * @param row    row index
+         * @param counts count of each cell in the row, which is
+         *               overwritten once this call returns
+         */
+        void write(int row, int[] counts);
+    }
+
+    /**
+     * Counts the bombs around every cell of a board, including
+     * the bomb in the cell itself, reading the rows of bombs and
+     * storing the rows of counts in order from the top.
+     *
+     * @param numRows    number of rows in the board
+     * @param numColumns number of columns in the board
+     * @param bombs      reads each row of bombs
+     * @param counts     stores each row of counts
+     */
+    static void count(int numRows, int numColumns, BombRows bombs, CountRows counts) {
+        int[] above = new int[numColumns];
+        int[] current = new int[numColumns];
+        int[] below = new int[numColumns];
+        int[] columnSums = new int[numColumns];
+        int[] leftSums = new int[numColumns]; //column sums moved right by one, the first one is always 0
+        int[] rightSums = new int[numColumns]; //column sums moved left by one, the last one is always 0
+        int[] rowCounts = new int[numColumns];
+        bombs.read(0, current);
+
+        for (int i = 0; i < numRows; i++) {
+            if (i < numRows - 1) bombs.read(i + 1, below);
+            else Arrays.fill(below, 0);
+
+            for (int j = 0; j < numColumns; j++) columnSums[j] = above[j] + current[j] + below[j];
+
+            System.arraycopy(columnSums, 0, leftSums, 1, numColumns - 1);
+            System.arraycopy(columnSums, 1, rightSums, 0, numColumns - 1);
+            for (int j = 0; j < numColumns; j++) rowCounts[j] = leftSums[j] + columnSums[j] + rightSums[j];
+            counts.write(i, rowCounts);
+
+            //move down a row, reusing the row above as the next row below
+            int[] reused = above;
+            above = current;
+            current = below;
+            below = reused;
+        }
+    }
+}
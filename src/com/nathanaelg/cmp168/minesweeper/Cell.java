@@ -1,14 +1,7 @@
 package com.nathanaelg.cmp168.minesweeper;
 
 import javafx.scene.control.Button;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.paint.Color;
-import javafx.scene.paint.Paint;
-
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.ResourceBundle;
 
 /**
  * A subclass of the {@link Button} class
@@ -29,39 +22,28 @@ import java.util.ResourceBundle;
  * to indicate that the user believes there is a bomb at this
  * location. When the flag is toggled on, cells are not revealed until
  * the game is over or until the flag is toggled back off.
+ * <p>
+ * Counts, bombs and flags are shown as regions of a
+ * {@link SpriteAtlas} given by {@link #setAtlas(SpriteAtlas)}.
  */
 public class Cell extends Button {
     private final int row;
     private final int column;
-    private final int count;
-    private final boolean hasBomb;
+    private int count; //changed when the cell is reused for a new game
+    private boolean hasBomb;
 
-    /**
-     * Image of a flag
-     */
-    private static final Image flagImage = new Image(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("resources/images/flag-100x.png")));
-    /**
-     * Image of a bomb
-     */
-    private static final Image bombImage = new Image(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream("resources/images/bomb-100x.png")));
-    /**
-     * Contains the colors that correspond to each possible
-     * number in the count of each cell. Colors are predetermined
-     * and read from a property file. The keys of the map are integers
-     * from 0-9 which are the only possible values a cell count can have.
-     *
-     * @see BombGrid#getCountAtLocation(int, int)
-     */
-    private static HashMap<Integer, Paint> colors;
     /**
      * The number of cells that have been revealed since the game begun.
      * This value is reset to zero by calling {@link Cell#resetNumCellsRevealed()}.
      * This method is called every time a new game is begun.
      */
     private static int numCellsRevealed = 0;
-    private final ImageView imageView; //used to display either bomb or flag image
+    private final ImageView imageView; //used to display the count, bomb or flag sprite
+    private SpriteAtlas atlas; //sprites shown by the cell, null until the cell has been laid out
+    private int sprite; //sprite the cell is showing, or -1 if it shows none
     private boolean isRevealed; //whether the cell has been revealed or not
     private boolean hasFlag; //whether the cell has a flag on it or not
+    private String overlayStyle; //inline style used to tint the cell by its bomb probability, if any
 
     /**
      * Creates a new Cell with the given values for
@@ -81,38 +63,72 @@ public class Cell extends Button {
      */
     public Cell(int row, int column, int count, boolean hasBomb) {
         super();
-        if (colors == null) init();
         this.row = row;
         this.column = column;
         this.count = count;
         this.hasBomb = hasBomb;
         this.isRevealed = false;
         this.imageView = new ImageView();
-        this.imageView.fitWidthProperty().bind(this.widthProperty().multiply(0.60));
-        this.imageView.setFitHeight(this.getHeight() * 0.80);
-        this.imageView.setPreserveRatio(true);
+        this.sprite = -1;
         this.getStyleClass().add("cell");
     }
 
     /**
-     * Initializes the hash map by reading from the properties file
-     * containing the hex colors to be used by the numbers in the game.
-     * This method is only called once by the Cell constructor if
-     * the colors hash map has not been initialized or is null.
+     * Resets the cell so it can be used in a new game on a
+     * board of the same size instead of creating a new cell.
+     * The cell is hidden again, loses its flag and any style it
+     * was given, and gets the count and bomb passed as arguments.
+     * <p>
+     * NOTE: The number of cells revealed is not changed by this
+     * method, it is reset by {@link #resetNumCellsRevealed()}.
+     *
+     * @param count   the number of bombs surrounding the cell,
+     *                including the cell itself
+     * @param hasBomb true if the cell contains a bomb
+     */
+    public void reset(int count, boolean hasBomb) {
+        this.count = count;
+        this.hasBomb = hasBomb;
+        this.isRevealed = false;
+        this.hasFlag = false;
+        this.overlayStyle = null;
+        this.clearSprite();
+        this.setStyle("");
+    }
+
+    /**
+     * Sets the atlas holding the sprites shown by the cell,
+     * e.g. when the cell has been resized.
+     *
+     * @param atlas atlas holding sprites of the size of the cell
      */
-    private static void init() {
-        ResourceBundle colorsBundle = ResourceBundle.getBundle("resources/bundles/colors");
-        colors = new HashMap<>();
-        colors.put(0, Color.web(colorsBundle.getString("zero")));
-        colors.put(1, Color.web(colorsBundle.getString("one")));
-        colors.put(2, Color.web(colorsBundle.getString("two")));
-        colors.put(3, Color.web(colorsBundle.getString("three")));
-        colors.put(4, Color.web(colorsBundle.getString("four")));
-        colors.put(5, Color.web(colorsBundle.getString("five")));
-        colors.put(6, Color.web(colorsBundle.getString("six")));
-        colors.put(7, Color.web(colorsBundle.getString("seven")));
-        colors.put(8, Color.web(colorsBundle.getString("eight")));
-        colors.put(9, Color.web(colorsBundle.getString("nine")));
+    public void setAtlas(SpriteAtlas atlas) {
+        if (atlas == this.atlas) return;
+        this.atlas = atlas;
+        this.imageView.setImage(atlas.getImage());
+        this.imageView.setFitWidth(atlas.getSpriteSize());
+        this.imageView.setFitHeight(atlas.getSpriteSize());
+        if (this.sprite >= 0) this.showSprite(this.sprite);
+    }
+
+    /**
+     * Shows a sprite of the atlas on the cell.
+     *
+     * @param sprite a count from 0-9, {@link SpriteAtlas#BOMB} or {@link SpriteAtlas#FLAG}
+     */
+    private void showSprite(int sprite) {
+        this.sprite = sprite;
+        if (this.atlas == null) return; //shown once the cell has an atlas
+        this.imageView.setViewport(this.atlas.getViewport(sprite));
+        this.setGraphic(this.imageView);
+    }
+
+    /**
+     * Removes the sprite shown on the cell, if any.
+     */
+    private void clearSprite() {
+        this.sprite = -1;
+        this.setGraphic(null);
     }
 
     /**
@@ -148,18 +164,80 @@ public class Cell extends Button {
      */
     public void reveal() {
         if (this.hasFlag || this.isRevealed) return; //do nothing if has flag or has been revealed
+        this.clearOverlay();
         if (this.hasBomb) revealBomb();
         else this.revealCount();
         this.isRevealed = true;
         numCellsRevealed++;
     }
 
+    /**
+     * Changes the cell to be revealed and flagged as
+     * given by the arguments, e.g. when a move is undone.
+     * A revealed cell that becomes hidden again is counted
+     * as no longer revealed, and loses any style it was given
+     * when it was revealed.
+     *
+     * @param revealed true if the cell should be revealed
+     * @param flagged  true if the cell should have a flag
+     * @see BoardHistory
+     */
+    public void restore(boolean revealed, boolean flagged) {
+        if (this.isRevealed == revealed && this.hasFlag == flagged) return;
+        if (this.isRevealed) {
+            this.isRevealed = false;
+            numCellsRevealed--;
+        }
+        this.hasFlag = false;
+        this.clearSprite();
+        this.clearOverlay();
+        this.setStyle("");
+        if (flagged) this.toggleFlag();
+        if (revealed) this.reveal();
+    }
+
+    /**
+     * Tints the cell using the inline style passed as an
+     * argument to show how likely it is to contain a bomb.
+     * Cells that have been revealed are never tinted.
+     *
+     * @param style inline style used to tint the cell
+     * @see ProbabilityOverlay
+     */
+    public void showOverlay(String style) {
+        if (!isHidden() || style.equals(this.overlayStyle)) return;
+        this.overlayStyle = style;
+        this.setStyle(style);
+    }
+
+    /**
+     * Removes the tint added by {@link #showOverlay(String)}.
+     * <p>
+     * NOTE: If the style of the cell was changed after the tint was
+     * added (e.g. to highlight bombs when the game is over), that
+     * style is kept.
+     */
+    public void clearOverlay() {
+        if (this.overlayStyle == null) return;
+        if (this.overlayStyle.equals(this.getStyle())) this.setStyle("");
+        this.overlayStyle = null;
+    }
+
+    /**
+     * Removes the style given to the cell to highlight it when
+     * the game is over, along with any tint, e.g. when the move
+     * that ended the game is undone.
+     */
+    public void clearHighlight() {
+        this.clearOverlay();
+        this.setStyle("");
+    }
+
     /**
      * Reveal the number of bombs surrounding the cell.
      */
     private void revealCount() {
-        this.setText(String.valueOf(this.count));
-        this.setTextFill(colors.get(this.count));
+        this.showSprite(this.count);
     }
 
     /**
@@ -168,8 +246,7 @@ public class Cell extends Button {
      */
     private void revealBomb() {
         if (!this.hasBomb) return;
-        this.imageView.setImage(bombImage);
-        this.setGraphic(imageView);
+        this.showSprite(SpriteAtlas.BOMB);
     }
 
     /**
@@ -237,9 +314,8 @@ public class Cell extends Button {
      */
     public void toggleFlag() {
         if (!isHidden()) return;
-        imageView.setImage(flagImage);
-        if (!hasFlag) this.setGraphic(imageView);
-        else this.setGraphic(null);
+        if (!hasFlag) this.showSprite(SpriteAtlas.FLAG);
+        else this.clearSprite();
         this.hasFlag = !this.hasFlag;
     }
 }
\ No newline at end of file
@@ -0,0 +1,164 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Command line tool that compares the two ways a {@link BombGrid} on
+ * the classic square grid counts its bombs: adding one to the cells
+ * around each bomb, and the box sum of {@link BoxSum}. It does not
+ * need JavaFX.
+ * <p>
+ * For each density, each round generates a board and counts its bombs
+ * again both ways, checking that both give the same counts. The best
+ * time of each way is reported, along with the way the BombGrid picks
+ * for that density.
+ * <p>
+ * Running it again with {@code -XX:-UseSuperWord} shows how much of
+ * the box sum's speed comes from the JIT compiler vectorising its loops.
+ * <p>
+ * Usage:
+ * <pre>
+ * java com.nathanaelg.cmp168.minesweeper.CountGridBenchmark
+ *     [--rows R] [--columns C] [--densities P,P,...] [--rounds N] [--seed S]
+ * </pre>
+ * where each density is the percentage of cells with a bomb.
+ */
+public class CountGridBenchmark {
+    private final int numRows;
+    private final int numColumns;
+    private final int numRounds;
+
+    //best nanoseconds taken by each way in the last call to run()
+    private long perBombNanos;
+    private long boxSumNanos;
+
+    /**
+     * Creates a benchmark of boards with the given size.
+     *
+     * @param numRows    number of rows in each board
+     * @param numColumns number of columns in each board
+     * @param numRounds  number of boards timed for each density
+     */
+    public CountGridBenchmark(int numRows, int numColumns, int numRounds) {
+        if (numRows <= 0 || numColumns <= 0) throw new IllegalArgumentException("grid dimensions must be positive");
+        if ((long) numRows * numColumns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("a BombGrid has at most " + Integer.MAX_VALUE + " cells");
+        if (numRounds <= 0) throw new IllegalArgumentException("number of rounds must be positive");
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numRounds = numRounds;
+    }
+
+    /**
+     * Counts the bombs of one board per round both ways.
+     *
+     * @param numBombs number of bombs in each board
+     * @param seed     seed of the first board, the next ones use seed + 1, seed + 2, ...
+     * @throws IllegalStateException if the two ways do not give the same counts
+     */
+    public void run(int numBombs, long seed) {
+        this.perBombNanos = Long.MAX_VALUE;
+        this.boxSumNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < numRounds; round++) {
+            BombGrid bombGrid = new BombGrid(numRows, numColumns, numBombs, seed + round);
+
+            long start = System.nanoTime();
+            bombGrid.recountSquare(false);
+            this.perBombNanos = Math.min(this.perBombNanos, System.nanoTime() - start);
+            int[][] perBomb = bombGrid.getCountRows().clone();
+            for (int i = 0; i < numRows; i++) perBomb[i] = perBomb[i].clone();
+
+            start = System.nanoTime();
+            bombGrid.recountSquare(true);
+            this.boxSumNanos = Math.min(this.boxSumNanos, System.nanoTime() - start);
+            int[][] boxSum = bombGrid.getCountRows();
+
+            for (int i = 0; i < numRows; i++) {
+                if (!Arrays.equals(perBomb[i], boxSum[i]))
+                    throw new IllegalStateException("counts differ in row " + i + " on board " + (seed + round));
+            }
+        }
+    }
+
+    /**
+     * Getter for the best time counting around each bomb took in the last run.
+     *
+     * @return best time in nanoseconds
+     */
+    public long getPerBombNanos() {
+        return this.perBombNanos;
+    }
+
+    /**
+     * Getter for the best time counting as a box sum took in the last run.
+     *
+     * @return best time in nanoseconds
+     */
+    public long getBoxSumNanos() {
+        return this.boxSumNanos;
+    }
+
+    /**
+     * Runs the rounds with the arguments given on the
+     * command line, printing one line per density.
+     *
+     * @param args command line arguments, see the usage above
+     */
+    public static void main(String[] args) {
+        int numRows = 4096;
+        int numColumns = 4096;
+        double[] densities = {0.5, 1, 2, 5, 15, 40};
+        int numRounds = 5;
+        long seed = System.nanoTime();
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--rows":
+                        numRows = Integer.parseInt(value);
+                        break;
+                    case "--columns":
+                        numColumns = Integer.parseInt(value);
+                        break;
+                    case "--densities":
+                        densities = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                        break;
+                    case "--rounds":
+                        numRounds = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            for (double density : densities) {
+                if (!(density >= 0 && density < 100)) throw new IllegalArgumentException("densities must be from 0 up to 100");
+            }
+
+            CountGridBenchmark benchmark = new CountGridBenchmark(numRows, numColumns, numRounds);
+            long numCells = (long) numRows * numColumns;
+            System.err.printf("%dx%d boards, %d rounds, seed %d%n", numRows, numColumns, numRounds, seed);
+            for (double density : densities) benchmark.run((int) (numCells * density / 100), seed); //warm up
+            for (double density : densities) {
+                int numBombs = (int) (numCells * density / 100);
+                benchmark.run(numBombs, seed);
+                System.err.printf("%6.2f%% bombs: per bomb %8.2f ms, box sum %8.2f ms, BombGrid uses %s%n",
+                        density, benchmark.getPerBombNanos() / 1e6, benchmark.getBoxSumNanos() / 1e6,
+                        BombGrid.usesBoxSum(numCells, numBombs) ? "box sum" : "per bomb");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: CountGridBenchmark [--rows R] [--columns C] [--densities P,P,...] [--rounds N]"
+                    + " [--seed S]");
+            System.exit(2);
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
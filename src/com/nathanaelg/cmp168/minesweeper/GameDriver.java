@@ -1,15 +1,18 @@
 package com.nathanaelg.cmp168.minesweeper;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
+import javafx.scene.Scene;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.StackPane;
@@ -17,28 +20,48 @@ import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 import javafx.stage.StageStyle;
+import javafx.stage.Window;
+import javafx.util.Duration;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles anything that has to do with
  * the GUI elements of the game. "Drives" the game.
  */
 public class GameDriver {
-    private static final Media bombSound = new Media(String.valueOf(ClassLoader.getSystemResource("resources/sounds/gameover.mp3")));
-    private static final Media plopSound = new Media(String.valueOf(ClassLoader.getSystemResource("resources/sounds/plop.mp3")));
-    private static final Media winSound = new Media(String.valueOf(ClassLoader.getSystemResource("resources/sounds/win.mp3")));
-    private static final Media confettiVideo = new Media(String.valueOf(ClassLoader.getSystemResource("resources/animations/confetti.mp4")));
-    private static final MediaPlayer winnerVideo = new MediaPlayer(confettiVideo);
+    private static final Duration ATLAS_DELAY = Duration.millis(150); //time the cells must keep their size before a new atlas is drawn
     private static MediaPlayer soundEffects; //used to play the different sounds available
 
     private final MediaView mediaView;
     private final StackPane gameStackPane;
+    private final ProbabilityOverlay probabilityOverlay;
+    private final PauseTransition atlasDelay; //restarted on every resize, updates the atlas once resizing stops
+    private boolean showProbabilities; //whether hidden cells are tinted by their bomb probability
+    private final ScheduledExecutorService timerService; //a single thread ticking every second while a game is running
+    private final Runnable tick = this::tick;
+    private final Runnable postTick = () -> Platform.runLater(this.tick);
     private boolean isGameRunning;
     private GridPane gameGridPane;
+    private ScheduledFuture<?> timer; //ticks of the current game, null while the timer is paused
+    private Label timerLabel;
+    private int elapsedSeconds; //seconds counted by the timer so far
+    private boolean resultRecorded; //whether the result of this board has been added to the high scores
+    private BoardHistory history; //reveals and flags of every move, used to undo and redo
+    private int explodedCell; //flat index of the bomb that lost the last game, -1 if none
+    private boolean bombsHighlighted; //whether the bombs show how the game ended
     private BombGrid bombGrid;
     private Cell[][] cells;
+    private int[] revealStack; //flat indices of empty cells waiting to have their neighbours revealed
+    private int[] neighbourBuffer; //neighbours of the cell being visited by revealCells
+    private int atlasSpriteSize; //sprite size of the atlas the cells have, 0 if they have none
+    private double atlasScale; //output scale of the atlas the cells have
+    private Window scaledWindow; //window whose output scale is being watched
 
     /**
      * Creates a new GameDriver
@@ -50,15 +73,20 @@ public class GameDriver {
      */
     public GameDriver() {
         this.isGameRunning = false;
-        this.mediaView = new MediaView(winnerVideo);
+        this.mediaView = new MediaView(); //the video is only loaded when the player wins
         this.mediaView.setOpacity(0.0);
         this.mediaView.setDisable(true);
+        this.probabilityOverlay = new ProbabilityOverlay();
+        this.atlasDelay = new PauseTransition(ATLAS_DELAY);
+        this.atlasDelay.setOnFinished(event -> this.updateAtlas());
+        this.timerService = createTimerService();
 
         this.bombGrid = new BombGrid(5, 5, 5);
         createGameGrid();
 
         this.gameStackPane = new StackPane();
         this.gameStackPane.getChildren().addAll(this.gameGridPane, this.mediaView);
+        this.gameStackPane.setOnKeyPressed(this::handleKeyPressed);
     }
 
     /**
@@ -75,30 +103,47 @@ public class GameDriver {
      */
     public GameDriver(DifficultyLevel difficultyLevel) {
         this.isGameRunning = false;
-        this.mediaView = new MediaView(winnerVideo);
+        this.mediaView = new MediaView(); //the video is only loaded when the player wins
         this.mediaView.setOpacity(0.0);
         this.mediaView.setDisable(true);
+        this.probabilityOverlay = new ProbabilityOverlay();
+        this.atlasDelay = new PauseTransition(ATLAS_DELAY);
+        this.atlasDelay.setOnFinished(event -> this.updateAtlas());
+        this.timerService = createTimerService();
 
-        bombGrid = new BombGrid(difficultyLevel.getRows(), difficultyLevel.getColumns(), difficultyLevel.getBombs());
+        bombGrid = BoardSupply.get().take(difficultyLevel);
         createGameGrid();
 
         this.gameStackPane = new StackPane();
         this.gameStackPane.getChildren().addAll(this.gameGridPane, this.mediaView);
+        this.gameStackPane.setOnKeyPressed(this::handleKeyPressed);
     }
 
     /**
-     * Sets the difficulty level and creates
-     * a new BombGrid and updates the GUI
-     * accordingly.
+     * Sets the difficulty level and takes
+     * a new BombGrid from the {@link BoardSupply}
+     * and updates the GUI accordingly.
+     * <p>
+     * If the new BombGrid has as many rows and columns as
+     * the current one, the cells of the current game are reset
+     * and reused instead of being created again.
      *
      * @param difficultyLevel level of difficulty
      * @see DifficultyLevel
      */
     public void setDifficultyLevel(DifficultyLevel difficultyLevel) {
-        bombGrid = new BombGrid(difficultyLevel.getRows(), difficultyLevel.getColumns(), difficultyLevel.getBombs());
-        createGameGrid();
+        BombGrid newGrid = BoardSupply.get().take(difficultyLevel); //usually generated in the background already
+        boolean sameSize = newGrid.getNumRows() == this.bombGrid.getNumRows()
+                && newGrid.getNumColumns() == this.bombGrid.getNumColumns();
+        bombGrid = newGrid;
+        if (sameSize) {
+            resetGameGrid();
+        } else {
+            createGameGrid();
+            this.gameStackPane.getChildren().set(0, gameGridPane);
+        }
 
-        this.gameStackPane.getChildren().set(0, gameGridPane);
+        if (this.showProbabilities) this.probabilityOverlay.update(this.cells);
     }
 
     /**
@@ -120,6 +165,37 @@ public class GameDriver {
      */
     private void setGameRunning(boolean isGameRunning) {
         this.isGameRunning = isGameRunning;
+        if (isGameRunning) this.resumeTimer();
+        else this.pauseTimer();
+    }
+
+    /**
+     * Handles the keyboard shortcuts of the game:
+     * P toggles the probability overlay, Ctrl+Z undoes
+     * the last move and Ctrl+Y or Ctrl+Shift+Z redoes it.
+     *
+     * @param ev key pressed
+     */
+    private void handleKeyPressed(KeyEvent ev) {
+        if (ev.getCode() == KeyCode.P) this.toggleProbabilities();
+        else if (ev.isShortcutDown() && ev.getCode() == KeyCode.Z) {
+            if (ev.isShiftDown()) this.redo();
+            else this.undo();
+        } else if (ev.isShortcutDown() && ev.getCode() == KeyCode.Y) this.redo();
+    }
+
+    /**
+     * Turns the probability overlay on or off. While it is on,
+     * every hidden cell is tinted by how likely it is to contain
+     * a bomb, and the tint is recomputed after every move.
+     * The overlay is toggled by pressing P.
+     *
+     * @see ProbabilityOverlay
+     */
+    private void toggleProbabilities() {
+        this.showProbabilities = !this.showProbabilities;
+        if (this.showProbabilities) this.probabilityOverlay.update(this.cells);
+        else this.probabilityOverlay.clear(this.cells);
     }
 
     /**
@@ -142,68 +218,62 @@ public class GameDriver {
         this.gameGridPane.setPadding(new Insets(10, 5, 5, 5));
         this.gameGridPane.setVgap(0.0);
 
-        this.cells = new Cell[this.bombGrid.getNumRows()][this.bombGrid.getNumColumns()];
+        BoardView board = this.bombGrid;
+        int numRows = board.getNumRows();
+        int numColumns = board.getNumColumns();
 
-        int numRows = this.bombGrid.getNumRows();
-        int numColumns = this.bombGrid.getNumColumns();
-
-        Task<Void> timer = new Task<Void>() {
-            @Override
-            public Void call() throws InterruptedException {
-                int i = 0;
-                while (true) {
-                    boolean wasGameRunning = isGameRunning();
-                    while (isGameRunning()) {
-                        Thread.sleep(1000);
-                        updateMessage(String.format("%03d", ++i));
-                    }
-                    if (wasGameRunning) break;
-                    updateMessage("000");
-                }
-                return null;
-            }
-        };
+        this.cells = new Cell[numRows][numColumns];
+        this.revealStack = new int[this.bombGrid.getArea()];
+        this.neighbourBuffer = new int[this.bombGrid.getTopology().getMaxDegree()];
 
-        Label timerLabel = new Label("000");
-        timerLabel.setId("timer");
-        timerLabel.textProperty().bind(timer.messageProperty());
-        new Thread(timer).start();
+        this.timerLabel = new Label("000");
+        this.timerLabel.setId("timer");
+        this.startGame();
 
-        this.gameGridPane.add(timerLabel, 0, 0, numColumns, 1);
+        this.gameGridPane.add(this.timerLabel, 0, 0, numColumns, 1);
 
-        GridPane.setHalignment(timerLabel, HPos.CENTER);
+        GridPane.setHalignment(this.timerLabel, HPos.CENTER);
 
         boolean alternate = true;
         for (int i = 0; i < numRows; i++) {
             if (numColumns % 2 == 0) alternate = !alternate;
             for (int j = 0; j < numColumns; j++) {
                 alternate = !alternate;
-                Cell cell = new Cell(i, j, this.bombGrid.getCountAtLocation(i, j), this.bombGrid.isBombAtLocation(i, j));
+                Cell cell = new Cell(i, j, board.getCountAtLocation(i, j), board.isBombAtLocation(i, j));
                 cell.prefWidthProperty().bind(this.gameGridPane.widthProperty().divide(numColumns));
                 cell.prefHeightProperty().bind(this.gameGridPane.heightProperty().multiply(0.90).divide(numRows));
                 cell.setId(alternate ? "shade1" : "shade2");
 
                 cell.setOnMouseClicked(ev -> {
+                    long clickNanos = System.nanoTime();
+                    Metrics.recordFirstClick();
                     if (!this.isGameRunning) {
                         this.setGameRunning(true);
                     }
 
                     if (cell.isHidden()) {
-                        if (ev.getButton() == MouseButton.SECONDARY) cell.toggleFlag();
+                        if (ev.getButton() == MouseButton.SECONDARY) this.toggleFlag(cell);
                         else if (!cell.hasFlag()) {
-                            if (!cell.hasBomb()) revealCells(cell.getRow(), cell.getColumn());
-                            else {
-                                cell.setStyle("-fx-background-color: red");
-                                cell.reveal();
+                            if (!cell.hasBomb()) {
+                                Metrics.RevealEvent event = new Metrics.RevealEvent();
+                                event.begin();
+                                int revealedBefore = Cell.getNumCellsRevealed();
+                                revealCells(cell.getRow(), cell.getColumn());
+                                Metrics.recordReveal(event, cell.getRow(), cell.getColumn(),
+                                        Cell.getNumCellsRevealed() - revealedBefore);
+                            } else {
+                                this.explodedCell = this.bombGrid.getTopology().index(cell.getRow(), cell.getColumn());
+                                this.reveal(cell);
                                 this.gameOver(false);
                                 return;
                             }
 
-                            if (this.bombGrid.getArea() - Cell.getNumCellsRevealed() == this.bombGrid.getNumBombs())
-                                this.gameOver(true);
+                            if (this.isCleared()) this.gameOver(true);
                         }
-                        soundEffects = new MediaPlayer(plopSound);
-                        soundEffects.play();
+                        this.history.commit();
+                        playSound(Assets.Sound.PLOP);
+                        if (this.showProbabilities) this.probabilityOverlay.update(this.cells);
+                        if (Metrics.ENABLED) this.recordClickToPaint(clickNanos);
                     }
                 });
 
@@ -211,70 +281,377 @@ public class GameDriver {
                 this.cells[i][j] = cell;
             }
         }
+
+        //every cell has the same size, so only the first one needs to be watched
+        Cell firstCell = this.cells[0][0];
+        firstCell.widthProperty().addListener(observable -> this.atlasDelay.playFromStart());
+        firstCell.heightProperty().addListener(observable -> this.atlasDelay.playFromStart());
+        this.atlasSpriteSize = 0; //the new cells have no atlas yet
     }
 
     /**
-     * Calls to reveal the clicked cell and
-     * all nearby cells if the count of the
-     * clicked cell is 0 using recursion.
-     *
-     * @param row    row index of the clicked cell
-     * @param column column index of the clicked cell
+     * Gets the GUI grid ready for a new game on the current
+     * BombGrid by resetting every {@link Cell} in place. The
+     * cells, their handlers and the GridPane are kept, so
+     * restarting does not create any nodes.
+     * <p>
+     * NOTE: The current BombGrid must have as many rows and
+     * columns as the grid of cells.
      */
-    private void revealCells(int row, int column) {
-        Cell originalCell = this.cells[row][column];
-        originalCell.reveal(); //reveal original cell
-        if (originalCell.getCount() != 0) return;
-
-        if (row > 0) {
-            Cell cell = this.cells[row - 1][column];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row - 1, column);
-            else if (!cell.hasBomb()) cell.reveal();
+    private void resetGameGrid() {
+        BoardView board = this.bombGrid;
+        for (int i = 0; i < board.getNumRows(); i++) {
+            for (int j = 0; j < board.getNumColumns(); j++) {
+                this.cells[i][j].reset(board.getCountAtLocation(i, j), board.isBombAtLocation(i, j));
+            }
         }
+        this.startGame();
+    }
 
-        if (row > 0 && column > 0) {
-            Cell cell = this.cells[row - 1][column - 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row - 1, column - 1);
-            else if (!cell.hasBomb()) cell.reveal();
-        }
+    /**
+     * Resets the state of the game kept outside of the
+     * cells (the history, probability overlay and timer)
+     * for a new game on the current BombGrid.
+     */
+    private void startGame() {
+        if (this.history != null && this.history.getNumCells() == this.bombGrid.getArea()) this.history.clear();
+        else this.history = new BoardHistory(this.bombGrid.getArea());
+        this.probabilityOverlay.reset(this.bombGrid);
+        this.resultRecorded = false;
+        this.explodedCell = -1;
+        this.bombsHighlighted = false; //the cells were reset or created without any style
+        this.pauseTimer();
+        this.elapsedSeconds = 0;
+        this.timerLabel.setText("000");
+    }
 
-        if (row > 0 && column < this.bombGrid.getNumColumns() - 1) {
-            Cell cell = this.cells[row - 1][column + 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row - 1, column + 1);
-            else if (!cell.hasBomb()) cell.reveal();
+    /**
+     * Gives every cell the {@link SpriteAtlas} matching the
+     * current size of the cells and the scale of the screen.
+     * <p>
+     * This is called once the cells have kept their size for
+     * {@link #ATLAS_DELAY}, so dragging the edge of the window
+     * draws a single atlas when the drag stops, not one for
+     * every size the cells go through. Nothing is done if the
+     * sprites would have the size they already have.
+     */
+    private void updateAtlas() {
+        Cell firstCell = this.cells[0][0];
+        int spriteSize = (int) Math.round(Math.min(firstCell.getWidth() * 0.60, firstCell.getHeight() * 0.80));
+        if (spriteSize <= 0) return; //not laid out yet
+        Window window = firstCell.getScene() == null ? null : firstCell.getScene().getWindow();
+        if (window != null && window != this.scaledWindow) {
+            //moving the window to a screen with another scale does not resize the cells
+            this.scaledWindow = window;
+            window.outputScaleXProperty().addListener(observable -> this.atlasDelay.playFromStart());
         }
+        double scale = window == null ? 1.0 : window.getOutputScaleX();
+        if (spriteSize == this.atlasSpriteSize && scale == this.atlasScale) return;
+        this.atlasSpriteSize = spriteSize;
+        this.atlasScale = scale;
+
+        SpriteAtlas atlas = SpriteAtlas.get(spriteSize, scale);
+        for (Cell[] row : this.cells) {
+            for (Cell cell : row) cell.setAtlas(atlas);
+        }
+    }
+
+    /**
+     * Creates the service whose thread counts the seconds of
+     * every game played with this GameDriver, so starting a
+     * new game does not start a new thread.
+     *
+     * @return service with a single daemon thread
+     */
+    private static ScheduledExecutorService createTimerService() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-timer");
+            thread.setDaemon(true);
+            Metrics.timerStarted(); //the thread runs until the application exits
+            return thread;
+        });
+    }
+
+    /**
+     * Starts counting seconds from {@link #elapsedSeconds}
+     * onwards, unless the timer is already counting.
+     */
+    private void resumeTimer() {
+        if (this.timer != null) return;
+        this.timer = this.timerService.scheduleAtFixedRate(this.postTick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops counting seconds, keeping the seconds counted so far.
+     */
+    private void pauseTimer() {
+        if (this.timer == null) return;
+        this.timer.cancel(false);
+        this.timer = null;
+    }
+
+    /**
+     * Counts a second of the game, on the JavaFX Application Thread.
+     */
+    private void tick() {
+        if (this.timer == null) return; //the timer was paused after this tick was posted
+        this.elapsedSeconds++;
+        this.timerLabel.setText(String.format("%03d", this.elapsedSeconds));
+    }
+
+    /**
+     * Reveals a cell and records it as part of the
+     * current move in the {@link BoardHistory}.
+     *
+     * @param cell cell to reveal
+     */
+    private void reveal(Cell cell) {
+        if (!cell.isHidden()) return;
+        cell.reveal();
+        if (!cell.isHidden()) this.history.revealed(this.bombGrid.getTopology().index(cell.getRow(), cell.getColumn()));
+    }
+
+    /**
+     * Toggles the flag of a cell and records it as part
+     * of the current move in the {@link BoardHistory}.
+     *
+     * @param cell cell whose flag is toggled
+     */
+    private void toggleFlag(Cell cell) {
+        cell.toggleFlag();
+        this.history.flagged(this.bombGrid.getTopology().index(cell.getRow(), cell.getColumn()), cell.hasFlag());
+    }
+
+    /**
+     * Undoes the last move, hiding the cells it revealed
+     * and restoring the flags it changed. Only the cells
+     * changed by the move are touched.
+     */
+    private void undo() {
+        int[] changed = this.history.undo();
+        if (changed == null) return;
+        this.clearBombHighlights();
+        this.restoreCells(changed);
+    }
+
+    /**
+     * Redoes the last move that was undone. If the move
+     * revealed a bomb or revealed the last safe cell,
+     * the game ends again and the bombs are highlighted
+     * the same way as the first time.
+     */
+    private void redo() {
+        int[] changed = this.history.redo();
+        if (changed == null) return;
+        this.restoreCells(changed);
 
-        if (row < this.bombGrid.getNumRows() - 1) {
-            Cell cell = this.cells[row + 1][column];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row + 1, column);
-            else if (!cell.hasBomb()) cell.reveal();
+        int numColumns = this.bombGrid.getNumColumns();
+        for (int cell : changed) {
+            if (this.cells[cell / numColumns][cell % numColumns].hasBomb() && this.history.isRevealed(cell)) {
+                this.gameOver(false);
+                return;
+            }
         }
+        if (this.isCleared()) this.gameOver(true);
+    }
+
+    /**
+     * Determines whether every cell without a bomb has been revealed.
+     *
+     * @return true if the user has won the game
+     */
+    private boolean isCleared() {
+        BoardView board = this.bombGrid;
+        return board.getNumCells() - Cell.getNumCellsRevealed() == board.getTotalBombs();
+    }
 
-        if (row < this.bombGrid.getNumRows() - 1 && column > 0) {
-            Cell cell = this.cells[row + 1][column - 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row + 1, column - 1);
-            else if (!cell.hasBomb()) cell.reveal();
+    /**
+     * Highlights every bomb to show how the game ended: blue if
+     * the player won, otherwise red for the bomb that was clicked
+     * and orange for the others, including the ones with a flag.
+     *
+     * @param winner true if the user has won the game
+     */
+    private void highlightBombs(boolean winner) {
+        int[][] bombLocations = this.bombGrid.getBombLocations();
+        for (int[] location : bombLocations) {
+            int row = location[0];
+            int column = location[1];
+            String style;
+            if (winner) style = "-fx-background-color: blue;";
+            else if (this.bombGrid.getTopology().index(row, column) == this.explodedCell) style = "-fx-background-color: red";
+            else style = "-fx-background-color: orange;";
+            this.cells[row][column].setStyle(style);
         }
+        this.bombsHighlighted = true;
+    }
 
-        if (column > 0) {
-            Cell cell = this.cells[row][column - 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row, column - 1);
-            else if (!cell.hasBomb()) cell.reveal();
+    /**
+     * Removes the highlights added by {@link #highlightBombs(boolean)}.
+     * Flagged bombs are never revealed, so undoing the move that
+     * ended the game does not change them, and they would otherwise
+     * keep showing which flags were right.
+     */
+    private void clearBombHighlights() {
+        if (!this.bombsHighlighted) return;
+        for (int[] location : this.bombGrid.getBombLocations()) {
+            this.cells[location[0]][location[1]].clearHighlight();
         }
+        this.bombsHighlighted = false;
+    }
 
-        if (column < this.bombGrid.getNumColumns() - 1) {
-            Cell cell = this.cells[row][column + 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row, column + 1);
-            else if (!cell.hasBomb()) cell.reveal();
+    /**
+     * Updates the cells passed as an argument to match
+     * the current version of the {@link BoardHistory}.
+     *
+     * @param changed flat indices of the cells to update
+     */
+    private void restoreCells(int[] changed) {
+        int numColumns = this.bombGrid.getNumColumns();
+        for (int cell : changed) {
+            this.cells[cell / numColumns][cell % numColumns].restore(this.history.isRevealed(cell), this.history.isFlagged(cell));
         }
+        if (this.showProbabilities) this.probabilityOverlay.update(this.cells);
+    }
+
+    /**
+     * Creates a media player for a sound or video.
+     *
+     * @param sound sound or video to play
+     * @return new media player, or null if the media is not available
+     * @see Assets#media(Assets.Sound)
+     */
+    private static MediaPlayer newMediaPlayer(Assets.Sound sound) {
+        Media media = Assets.media(sound);
+        return media == null ? null : new MediaPlayer(media);
+    }
+
+    /**
+     * Plays a sound effect, if it is available.
+     *
+     * @param sound sound to play
+     */
+    private static void playSound(Assets.Sound sound) {
+        MediaPlayer player = newMediaPlayer(sound);
+        if (player == null) return;
+        soundEffects = player;
+        soundEffects.play();
+    }
+
+    /**
+     * Gets the player of the video shown when the player
+     * wins, creating it the first time it is needed.
+     *
+     * @return player of the video, or null if the video is not available
+     */
+    private MediaPlayer getWinnerVideo() {
+        if (this.mediaView.getMediaPlayer() == null) this.mediaView.setMediaPlayer(newMediaPlayer(Assets.Sound.CONFETTI));
+        return this.mediaView.getMediaPlayer();
+    }
+
+    /**
+     * Records the time from a click until the scene
+     * has been laid out by the next pulse.
+     *
+     * @param clickNanos value of {@link System#nanoTime()} when the click was received
+     * @see Metrics#recordClickToPaint(long)
+     */
+    private void recordClickToPaint(long clickNanos) {
+        Scene scene = this.gameStackPane.getScene();
+        if (scene == null) return;
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                Metrics.recordClickToPaint(clickNanos);
+                scene.removePostLayoutPulseListener(this);
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+    }
 
-        if (column < this.bombGrid.getNumColumns() - 1 && row < this.bombGrid.getNumRows() - 1) {
-            Cell cell = this.cells[row + 1][column + 1];
-            if (cell.getCount() == 0 && cell.isHidden()) revealCells(row + 1, column + 1);
-            else if (!cell.hasBomb()) cell.reveal();
+    /**
+     * Reveals the clicked cell and, if the count of the
+     * clicked cell is 0, all nearby cells. The nearby
+     * cells are found using the {@link Topology} of the
+     * {@link BombGrid} and are visited with an explicit
+     * stack instead of recursion, so large openings cannot
+     * overflow the call stack.
+     *
+     * @param row    row index of the clicked cell
+     * @param column column index of the clicked cell
+     */
+    private void revealCells(int row, int column) {
+        Cell originalCell = this.cells[row][column];
+        this.reveal(originalCell); //reveal original cell
+        if (originalCell.getCount() != 0 || originalCell.isHidden()) return;
+
+        Topology topology = this.bombGrid.getTopology();
+        int numColumns = this.bombGrid.getNumColumns();
+        int top = 0;
+        this.revealStack[top++] = topology.index(row, column);
+
+        while (top > 0) {
+            int degree = topology.neighbours(this.revealStack[--top], this.neighbourBuffer);
+            for (int k = 0; k < degree; k++) {
+                int neighbour = this.neighbourBuffer[k];
+                Cell cell = this.cells[neighbour / numColumns][neighbour % numColumns];
+                if (!cell.isHidden() || cell.hasBomb()) continue;
+                this.reveal(cell);
+                //keep spreading from empty cells, each one is pushed at most once since it is now revealed
+                if (cell.getCount() == 0 && !cell.isHidden()) this.revealStack[top++] = neighbour;
+            }
         }
     }
 
+    /**
+     * Adds the result of the game to the {@link HighScores},
+     * unless a result was already recorded for this board
+     * (i.e. a lost game was continued with undo), and shows how
+     * it compares to earlier games in the game over dialog.
+     * <p>
+     * NOTE: This never waits for the high scores to load. Until they
+     * are loaded the dialog says the statistics are still loading,
+     * and they are filled in on the JavaFX thread once they are.
+     *
+     * @param winner true if the user has won the game
+     * @param dialog game over dialog showing the result
+     */
+    private void recordResult(boolean winner, Dialog<?> dialog) {
+        HighScores highScores = HighScores.get();
+        String spec = HighScores.spec(this.bombGrid);
+        int seconds = this.elapsedSeconds;
+        boolean recorded = !this.resultRecorded;
+        this.resultRecorded = true;
+
+        //until the log is loaded the scores only hold this run's games, so comparing against them would mislead
+        dialog.setContentText((winner ? "Time: " + seconds + "s. " : "") + "Your statistics are still loading.");
+        highScores.whenLoaded(() -> {
+            HighScores.Scores scores = highScores.getScores(spec); //does not include this game yet
+            Platform.runLater(() -> dialog.setContentText(describeResult(winner, recorded, seconds, scores)));
+        });
+        if (recorded) highScores.record(spec, winner, seconds); //after whenLoaded, so the scores above leave it out
+    }
+
+    /**
+     * Describes the result of a game compared to earlier games.
+     *
+     * @param winner   true if the user has won the game
+     * @param recorded true if the result was added to the high scores
+     * @param seconds  how long the game took, in seconds
+     * @param scores   scores of the board, not including this game
+     * @return message describing the result, shown when the game is over
+     */
+    private static String describeResult(boolean winner, boolean recorded, int seconds, HighScores.Scores scores) {
+        int gamesWon = scores.getGamesWon() + (recorded && winner ? 1 : 0);
+        int gamesPlayed = scores.getGamesPlayed() + (recorded ? 1 : 0);
+        String statistics = "Won " + gamesWon + " of " + gamesPlayed + " games on this board.";
+        if (!winner) return statistics;
+        if (!recorded) return "Time: " + seconds + "s (not recorded since a move was undone). " + statistics;
+        if (scores.getGamesWon() == 0 || seconds < scores.getBestTime()) return "New best time: " + seconds + "s! " + statistics;
+        return String.format("Time: %ds, faster than %.0f%% of your wins (best: %ds). %s",
+                seconds, scores.getPercentileRank(seconds), scores.getBestTime(), statistics);
+    }
+
     /**
      * Reveals all of the cells in the grid and
      * asks if the user would like to play again.
@@ -283,59 +660,68 @@ public class GameDriver {
      */
     private void gameOver(boolean winner) {
         this.setGameRunning(false);
+        this.probabilityOverlay.cancel();
+        long start = System.nanoTime();
+        Metrics.GameOverEvent event = new Metrics.GameOverEvent();
+        event.begin();
         if (winner) {
-            soundEffects = new MediaPlayer(winSound);
+            MediaPlayer winnerVideo = this.getWinnerVideo();
+            MediaPlayer winSound = newMediaPlayer(Assets.Sound.WIN);
 
             int[][] bombLocations = this.bombGrid.getBombLocations();
 
             for (int i = 0; i < this.bombGrid.getNumBombs(); i++) {
                 int row = bombLocations[i][0];
                 int column = bombLocations[i][1];
-                Cell cell = cells[row][column];
-                cell.setStyle("-fx-background-color: blue;");
-                cell.reveal();
+                this.reveal(cells[row][column]);
             }
+            this.highlightBombs(true);
 
             Thread t = new Thread(() -> {
                 try {
-                    mediaView.setOpacity(0.4);
-                    winnerVideo.play();
-                    soundEffects.play();
+                    if (winnerVideo != null) {
+                        mediaView.setOpacity(0.4);
+                        winnerVideo.play();
+                    }
+                    if (winSound != null) winSound.play();
                     Thread.sleep(5000);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } finally {
-                    winnerVideo.stop();
-                    soundEffects.stop();
+                    if (winnerVideo != null) winnerVideo.stop();
+                    if (winSound != null) winSound.stop();
                     mediaView.setOpacity(0.0);
                 }
             });
 
             t.start();
         } else {
-            for (int i = 0; i < this.bombGrid.getNumRows(); i++) {
-                for (int j = 0; j < this.bombGrid.getNumColumns(); j++) {
-                    Cell cell = cells[i][j];
-                    if (cell.hasBomb() && cell.isHidden()) cell.setStyle("-fx-background-color: orange;");
-                    cells[i][j].reveal();
+            BoardView board = this.bombGrid;
+            for (int i = 0; i < board.getNumRows(); i++) {
+                for (int j = 0; j < board.getNumColumns(); j++) {
+                    this.reveal(cells[i][j]);
                 }
             }
+            this.highlightBombs(false);
 
             Thread t = new Thread(() -> {
                 try {
-                    soundEffects = new MediaPlayer(bombSound);
-                    soundEffects.play();
+                    soundEffects = newMediaPlayer(Assets.Sound.GAME_OVER);
+                    if (soundEffects != null) soundEffects.play();
                     Thread.sleep(5000);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } finally {
-                    soundEffects.stop();
+                    if (soundEffects != null) soundEffects.stop();
                 }
             });
 
             t.start();
         }
 
+        this.history.commit();
+        Metrics.recordGameOver(event, start, winner, Cell.getNumCellsRevealed());
+
         String dialogTitle = winner ? "YOU WON!" : "GAME OVER";
         String dialogMessage = "Would you like to play again?";
 
@@ -347,14 +733,17 @@ public class GameDriver {
         ButtonType regular = new ButtonType("NORMAL", ButtonBar.ButtonData.LEFT);
         ButtonType hard = new ButtonType("HARD", ButtonBar.ButtonData.LEFT);
         ButtonType exit = new ButtonType("EXIT", ButtonBar.ButtonData.LEFT);
+        ButtonType undo = new ButtonType("UNDO", ButtonBar.ButtonData.LEFT);
 
         dialog.getDialogPane().getButtonTypes().addAll(easy, regular, hard, exit);
+        if (!winner) dialog.getDialogPane().getButtonTypes().add(undo);
         Image image = new Image(Objects.requireNonNull(ClassLoader.getSystemResourceAsStream(winner ? "resources/images/crown.png" : "resources/images/explosion.png")));
         ImageView imageView = new ImageView(image);
         imageView.setPreserveRatio(true);
         imageView.setFitWidth(125);
         dialog.setGraphic(imageView);
         dialog.setHeaderText(dialogMessage);
+        this.recordResult(winner, dialog);
         dialog.initStyle(StageStyle.UNDECORATED);
         dialog.getDialogPane().setPrefWidth(400);
         dialog.setResultConverter((c) -> {
@@ -364,6 +753,8 @@ public class GameDriver {
                 return DifficultyLevel.REGULAR;
             } else if (c.equals(hard)) {
                 return DifficultyLevel.HARD;
+            } else if (c.equals(undo)) {
+                return null;
             } else {
                 Platform.exit();
                 System.exit(0);
@@ -373,7 +764,12 @@ public class GameDriver {
 
         Optional<DifficultyLevel> option = dialog.showAndWait();
 
-        option.ifPresent(this::setDifficultyLevel);
-        Cell.resetNumCellsRevealed();
+        if (option.isPresent()) {
+            this.setDifficultyLevel(option.get());
+            Cell.resetNumCellsRevealed();
+        } else {
+            //take back the move that lost the game and keep playing
+            this.undo(); //the timer resumes with the next click
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,588 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the best times and statistics of every kind of
+ * board that has been played, across runs of the game.
+ * <p>
+ * Results are appended to a log file as games end. The log
+ * is compacted every {@value #COMPACT_AFTER} results by rewriting
+ * it with a single summary per kind of board. Each record carries
+ * a checksum, so a record cut short by a crash is dropped when the
+ * log is loaded instead of corrupting the rest of it.
+ * <p>
+ * In memory, the scores of each kind of board are an immutable
+ * {@link Scores} object holding the winning times in a sorted
+ * {@code int} array, so best times and ranks are found with a
+ * binary search and can be read from any thread without locking.
+ * <p>
+ * Loading the log, recording results and compacting all happen
+ * on a single background thread. {@link #record(String, boolean, int)}
+ * only queues the result, so it never waits on the disk.
+ */
+public final class HighScores {
+    /**
+     * File the scores of the game are kept in, unless the
+     * {@code minesweeper.scores} system property names another one.
+     */
+    public static final String DEFAULT_FILE = System.getProperty("minesweeper.scores",
+            Paths.get(System.getProperty("user.home"), ".minesweeper", "scores.log").toString());
+    /**
+     * Number of results appended to the log before it is compacted.
+     */
+    public static final int COMPACT_AFTER = 1024;
+
+    private static final int MAGIC = 0x4D534853; //"MSHS"
+    private static final int VERSION = 1;
+    private static final byte RESULT = 1; //the result of a single game
+    private static final byte SUMMARY = 2; //every result of a kind of board, written by compaction
+    private static final Result CLOSE = new Result(null, false, 0); //tells the writer thread to stop
+
+    private final Path file;
+    private final Map<String, Scores> scores; //replaced by the writer thread, read by anyone
+    private final BlockingQueue<Result> pending;
+    private final Thread writer;
+    private final List<Runnable> loadListeners; //run once the log has been loaded, guarded by itself
+    private volatile boolean loaded;
+    private FileChannel channel; //null if the log cannot be written; only used by the writer thread
+    private int numRecords; //records in the log; only used by the writer thread
+
+    /**
+     * Creates a store backed by the given log file and starts
+     * loading it in the background. The file and its directory
+     * are created if they do not exist.
+     *
+     * @param file log file holding the scores
+     */
+    public HighScores(Path file) {
+        this.file = file.toAbsolutePath();
+        this.scores = new ConcurrentHashMap<>();
+        this.pending = new LinkedBlockingQueue<>();
+        this.loadListeners = new ArrayList<>();
+        this.writer = new Thread(this::run, "high-scores");
+        this.writer.setDaemon(true);
+        this.writer.setPriority(Thread.MIN_PRIORITY);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> this.close(1000))); //write results still queued
+    }
+
+    /**
+     * Gets the store used by the game, which is kept in
+     * {@link #DEFAULT_FILE}. The first call starts loading it.
+     *
+     * @return store used by the game
+     */
+    public static HighScores get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Gets the name scores are kept under for boards with the
+     * given dimensions on a square grid. A {@link DifficultyLevel}
+     * shares its scores with custom boards of the same size.
+     *
+     * @param rows    number of rows
+     * @param columns number of columns
+     * @param bombs   number of bombs
+     * @return name of the kind of board
+     */
+    public static String spec(int rows, int columns, long bombs) {
+        return rows + "x" + columns + "/" + bombs;
+    }
+
+    /**
+     * Gets the name scores are kept under for boards like the given one.
+     * Boards other than a {@link BombGrid} are on the square grid.
+     *
+     * @param board board
+     * @return name of the kind of board
+     */
+    public static String spec(BoardView board) {
+        String spec = spec(board.getNumRows(), board.getNumColumns(), board.getTotalBombs());
+        if (!(board instanceof BombGrid bombGrid)) return spec;
+        Topology.Kind kind = bombGrid.getTopology().getKind();
+        return kind == Topology.Kind.SQUARE_8 ? spec : spec + " " + kind;
+    }
+
+    /**
+     * Determines whether the log has finished loading. Until it
+     * has, only results recorded since the game started are known.
+     *
+     * @return true if the log has been loaded
+     */
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Runs an action once the log has finished loading, without
+     * waiting for it. If the log has already been loaded, the action
+     * runs right away on the calling thread; otherwise it runs on the
+     * background thread as soon as the log is loaded.
+     * <p>
+     * NOTE: The action runs before any result recorded while the log
+     * was loading is added, so the scores it reads do not include
+     * results recorded after this call.
+     *
+     * @param action action to run, which should return quickly
+     */
+    public void whenLoaded(Runnable action) {
+        synchronized (this.loadListeners) {
+            if (!this.loaded) {
+                this.loadListeners.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Gets the scores of a kind of board. Results recorded
+     * moments ago may not be included yet.
+     *
+     * @param spec name of the kind of board
+     * @return scores of the board, which are empty if it has never been played
+     * @see #spec(BoardView)
+     */
+    public Scores getScores(String spec) {
+        return this.scores.getOrDefault(spec, Scores.EMPTY);
+    }
+
+    /**
+     * Records the result of a game. Returns right away;
+     * the result is added on the background thread.
+     *
+     * @param spec    name of the kind of board
+     * @param won     true if the player won
+     * @param seconds how long the game took, in seconds
+     */
+    public void record(String spec, boolean won, int seconds) {
+        if (seconds < 0) throw new IllegalArgumentException("seconds must not be negative");
+        this.pending.add(new Result(spec, won, seconds));
+    }
+
+    /**
+     * Writes every queued result and stops the background
+     * thread. Results recorded afterwards are ignored.
+     *
+     * @param timeoutMillis longest time to wait for the results to be written
+     */
+    public void close(long timeoutMillis) {
+        this.pending.add(CLOSE);
+        try {
+            this.writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            this.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.closeChannel(); //keep the scores of this run in memory only
+        }
+        List<Runnable> listeners;
+        synchronized (this.loadListeners) {
+            this.loaded = true;
+            listeners = new ArrayList<>(this.loadListeners);
+            this.loadListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace(); //keep the writer thread running
+            }
+        }
+
+        boolean open = true;
+        while (open) {
+            Result result;
+            try {
+                result = this.pending.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            //add every queued result before flushing them to the disk together
+            do {
+                if (result == CLOSE) open = false;
+                else if (open) this.add(result);
+            } while ((result = this.pending.poll()) != null);
+
+            try {
+                if (this.channel != null) this.channel.force(false);
+                if (this.channel != null && this.numRecords >= this.scores.size() + COMPACT_AFTER) this.compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.closeChannel();
+            }
+        }
+        this.closeChannel();
+    }
+
+    private void add(Result result) {
+        this.scores.put(result.spec, this.getScores(result.spec).with(result.won, result.seconds));
+        if (this.channel == null) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RESULT);
+            out.writeUTF(result.spec);
+            out.writeBoolean(result.won);
+            out.writeInt(result.seconds);
+            writeRecord(this.channel, bytes.toByteArray());
+            this.numRecords++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.closeChannel();
+        }
+    }
+
+    /**
+     * Reads the log into memory. A record cut short at the end
+     * of the log is cut off the file, since it was never completely
+     * written.
+     */
+    private void load() throws IOException {
+        Files.createDirectories(this.file.getParent());
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = this.channel.size();
+        if (size == 0) {
+            writeHeader(this.channel);
+            return;
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("score log is too large: " + this.file);
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer) < 0) break;
+        }
+        buffer.flip();
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a score log: " + this.file);
+        }
+
+        Map<String, Builder> builders = new HashMap<>();
+        CRC32 crc = new CRC32();
+        int end = buffer.position(); //end of the last complete record
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() - 4) break;
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt()) break;
+            readRecord(payload, builders);
+            this.numRecords++;
+            end = buffer.position();
+        }
+        if (end < size) {
+            this.channel.truncate(end);
+            this.channel.force(true);
+        }
+        this.channel.position(end);
+
+        //results recorded while the log was loading are still queued, so nothing is overwritten here
+        for (Map.Entry<String, Builder> entry : builders.entrySet()) this.scores.put(entry.getKey(), entry.getValue().build());
+    }
+
+    private static void readRecord(byte[] payload, Map<String, Builder> builders) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        Builder builder = builders.computeIfAbsent(in.readUTF(), spec -> new Builder());
+        if (type == RESULT) {
+            builder.add(in.readBoolean(), in.readInt());
+        } else if (type == SUMMARY) {
+            int gamesPlayed = in.readInt();
+            int currentStreak = in.readInt();
+            int longestStreak = in.readInt();
+            int numTimes = in.readInt();
+            int[] times = new int[numTimes];
+            for (int i = 0; i < numTimes; i++) times[i] = in.readInt();
+            builder.add(new Scores(gamesPlayed, currentStreak, longestStreak, times));
+        } else {
+            throw new IOException("unknown score record type: " + type);
+        }
+    }
+
+    /**
+     * Replaces the log with one holding a single summary record
+     * for each kind of board. The new log is written next to the
+     * old one and then moved over it, so a crash leaves one of
+     * them complete.
+     */
+    private void compact() throws IOException {
+        Path compacted = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out);
+            for (Map.Entry<String, Scores> entry : this.scores.entrySet()) {
+                Scores scores = entry.getValue();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + scores.times.length * 4);
+                DataOutputStream data = new DataOutputStream(bytes);
+                data.writeByte(SUMMARY);
+                data.writeUTF(entry.getKey());
+                data.writeInt(scores.gamesPlayed);
+                data.writeInt(scores.currentStreak);
+                data.writeInt(scores.longestStreak);
+                data.writeInt(scores.times.length);
+                for (int time : scores.times) data.writeInt(time);
+                writeRecord(out, bytes.toByteArray());
+            }
+            out.force(true);
+        }
+
+        this.closeChannel(); //some platforms cannot replace a file that is open
+        Files.move(compacted, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = FileChannel.open(this.file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.numRecords = this.scores.size();
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+    }
+
+    private static void writeRecord(FileChannel channel, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(payload.length + 8);
+        record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) channel.write(record);
+    }
+
+    private void closeChannel() {
+        if (this.channel == null) return;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.channel = null;
+    }
+
+    /**
+     * Best times and statistics of a kind of board. Objects of
+     * this class never change; recording a result replaces them.
+     */
+    public static final class Scores {
+        /**
+         * Scores of a board that has never been played.
+         */
+        public static final Scores EMPTY = new Scores(0, 0, 0, new int[0]);
+
+        private final int gamesPlayed;
+        private final int currentStreak;
+        private final int longestStreak;
+        private final int[] times; //seconds taken by every win, fastest first
+
+        private Scores(int gamesPlayed, int currentStreak, int longestStreak, int[] times) {
+            this.gamesPlayed = gamesPlayed;
+            this.currentStreak = currentStreak;
+            this.longestStreak = longestStreak;
+            this.times = times;
+        }
+
+        private Scores with(boolean won, int seconds) {
+            if (!won) return new Scores(this.gamesPlayed + 1, 0, this.longestStreak, this.times);
+            int position = lowerBound(this.times, seconds);
+            int[] times = new int[this.times.length + 1];
+            System.arraycopy(this.times, 0, times, 0, position);
+            times[position] = seconds;
+            System.arraycopy(this.times, position, times, position + 1, this.times.length - position);
+            return new Scores(this.gamesPlayed + 1, this.currentStreak + 1,
+                    Math.max(this.longestStreak, this.currentStreak + 1), times);
+        }
+
+        /**
+         * Getter for the number of games played.
+         *
+         * @return number of games played
+         */
+        public int getGamesPlayed() {
+            return gamesPlayed;
+        }
+
+        /**
+         * Getter for the number of games won.
+         *
+         * @return number of games won
+         */
+        public int getGamesWon() {
+            return times.length;
+        }
+
+        /**
+         * Getter for the number of games won in a row up to the last game.
+         *
+         * @return current winning streak
+         */
+        public int getCurrentStreak() {
+            return currentStreak;
+        }
+
+        /**
+         * Getter for the largest number of games ever won in a row.
+         *
+         * @return longest winning streak
+         */
+        public int getLongestStreak() {
+            return longestStreak;
+        }
+
+        /**
+         * Gets the fastest time a game was won in.
+         *
+         * @return best time in seconds, or -1 if no game was won
+         */
+        public int getBestTime() {
+            return this.times.length == 0 ? -1 : this.times[0];
+        }
+
+        /**
+         * Gets the fastest times games were won in.
+         *
+         * @param n largest number of times to get
+         * @return up to {@code n} times in seconds, fastest first
+         */
+        public int[] getTopTimes(int n) {
+            return Arrays.copyOf(this.times, Math.max(0, Math.min(n, this.times.length)));
+        }
+
+        /**
+         * Gets the place a win in the given time would take
+         * among the wins so far, where 1 is the best time.
+         * A win ties with the wins that took equally long.
+         *
+         * @param seconds time of the win in seconds
+         * @return place of the win
+         */
+        public int getRank(int seconds) {
+            return lowerBound(this.times, seconds) + 1;
+        }
+
+        /**
+         * Gets the percentage of wins so far that took longer
+         * than the given time.
+         *
+         * @param seconds time of the win in seconds
+         * @return percentage between 0 and 100, or 100 if no game was won
+         */
+        public double getPercentileRank(int seconds) {
+            if (this.times.length == 0) return 100;
+            int slower = this.times.length - lowerBound(this.times, seconds + 1);
+            return 100.0 * slower / this.times.length;
+        }
+
+        /**
+         * Finds the index of the first time that is not less than the given one.
+         */
+        private static int lowerBound(int[] times, int seconds) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < seconds) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        @Override
+        public String toString() {
+            return "com.nathanaelg.cmp168.minesweeper.HighScores.Scores{" +
+                    "gamesPlayed=" + gamesPlayed +
+                    ", gamesWon=" + times.length +
+                    ", currentStreak=" + currentStreak +
+                    ", longestStreak=" + longestStreak +
+                    ", bestTime=" + getBestTime() +
+                    '}';
+        }
+    }
+
+    /**
+     * Collects the records of a kind of board while the
+     * log is loading, so the times are only sorted once.
+     */
+    private static final class Builder {
+        private int gamesPlayed;
+        private int currentStreak;
+        private int longestStreak;
+        private int[] times = new int[16];
+        private int numTimes;
+
+        private void add(boolean won, int seconds) {
+            this.gamesPlayed++;
+            if (!won) {
+                this.currentStreak = 0;
+                return;
+            }
+            this.currentStreak++;
+            this.longestStreak = Math.max(this.longestStreak, this.currentStreak);
+            if (this.numTimes == this.times.length) this.times = Arrays.copyOf(this.times, this.numTimes * 2);
+            this.times[this.numTimes++] = seconds;
+        }
+
+        private void add(Scores summary) {
+            this.gamesPlayed += summary.gamesPlayed;
+            //the streak only carries on through the summary if every game in it was won
+            this.currentStreak = summary.currentStreak == summary.gamesPlayed
+                    ? this.currentStreak + summary.currentStreak : summary.currentStreak;
+            this.longestStreak = Math.max(Math.max(this.longestStreak, summary.longestStreak), this.currentStreak);
+            if (this.numTimes + summary.times.length > this.times.length) {
+                this.times = Arrays.copyOf(this.times, Math.max(this.numTimes * 2, this.numTimes + summary.times.length));
+            }
+            System.arraycopy(summary.times, 0, this.times, this.numTimes, summary.times.length);
+            this.numTimes += summary.times.length;
+        }
+
+        private Scores build() {
+            int[] times = Arrays.copyOf(this.times, this.numTimes);
+            Arrays.sort(times);
+            return new Scores(this.gamesPlayed, this.currentStreak, this.longestStreak, times);
+        }
+    }
+
+    private static final class Result {
+        private final String spec;
+        private final boolean won;
+        private final int seconds;
+
+        private Result(String spec, boolean won, int seconds) {
+            this.spec = spec;
+            this.won = won;
+            this.seconds = seconds;
+        }
+    }
+
+    private static final class Holder {
+        private static final HighScores INSTANCE = new HighScores(Paths.get(DEFAULT_FILE));
+    }
+}
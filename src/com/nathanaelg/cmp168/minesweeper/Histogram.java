@@ -0,0 +1,156 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative long values (e.g. durations
+ * in nanoseconds) that many threads can record into at the
+ * same time without locking.
+ * <p>
+ * Values are counted in log-linear buckets, the same way
+ * HdrHistogram does it: every power of two is split into
+ * 32 equally sized buckets, so any value read back from the
+ * histogram is within about 3% of the values that were recorded.
+ * Recording a value is a single atomic increment, plus updates
+ * to the running sum and maximum.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name name of the values being recorded
+     * @param unit unit of the values being recorded, used when printing
+     */
+    public Histogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+        this.counts = new AtomicLongArray(NUM_BUCKETS);
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        this.counts.incrementAndGet(bucketOf(value));
+        this.sum.add(value);
+        this.max.accumulate(value);
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     * Values below 64 each get their own bucket.
+     */
+    private static int bucketOf(long value) {
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        if (highestBit <= SUB_BUCKET_BITS) return (int) value;
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the highest value counted in a bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) ((bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Gets the name of the values being recorded.
+     *
+     * @return name of the histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return number of values recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) count += this.counts.get(i);
+        return count;
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return mean of the values recorded, or 0 if none were recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return largest value recorded, or 0 if none were recorded
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Gets the value below which the given percentage
+     * of the recorded values fall.
+     *
+     * @param percentile percentage from 0 to 100
+     * @return value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[NUM_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears all of the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) this.counts.set(i, 0);
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-22s count=%d mean=%.1f%s p50=%d%s p99=%d%s max=%d%s",
+                name, getCount(), getMean(), unit, getValueAtPercentile(50), unit,
+                getValueAtPercentile(99), unit, getMax(), unit);
+    }
+}
@@ -0,0 +1,329 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records runtime metrics of the game: how long boards
+ * take to generate, how many cells each click reveals,
+ * how long it takes from a click until the scene has been
+ * laid out again, how many threads are alive, how long
+ * after the JVM started the first frame was shown and the
+ * first cell was clicked, and how often a new game found its
+ * board ready in the {@link BoardSupply}.
+ * <p>
+ * Metrics are only recorded when the application is started
+ * with {@code -Dminesweeper.metrics=true}. When they are, they
+ * can be viewed through JMX under {@value #OBJECT_NAME} and are
+ * printed to the console when the application exits. Otherwise
+ * every method returns right away.
+ * <p>
+ * Independently of that flag, the game emits the JFR events
+ * declared in this class, which are recorded whenever a flight
+ * recording is running.
+ */
+public final class Metrics implements MetricsMXBean {
+    /**
+     * Name the metrics are registered under in JMX.
+     */
+    public static final String OBJECT_NAME = "com.nathanaelg.cmp168.minesweeper:type=Metrics";
+    /**
+     * Whether metrics are being recorded.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("minesweeper.metrics");
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static final Histogram boardGeneration = new Histogram("board generation", "us");
+    private static final Histogram clickToPaint = new Histogram("click to paint", "us");
+    private static final Histogram floodFillSize = new Histogram("flood fill size", " cells");
+    private static final Histogram gameOver = new Histogram("game over", "us");
+    private static final AtomicInteger timerThreads = new AtomicInteger();
+    private static final AtomicLong firstFrameMillis = new AtomicLong(-1); //milliseconds after the JVM started
+    private static final AtomicLong firstClickMillis = new AtomicLong(-1);
+    private static final LongAdder boardSupplyHits = new LongAdder();
+    private static final LongAdder boardSupplyMisses = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(INSTANCE.dump())));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Records that a board has been generated.
+     *
+     * @param event      event begun before generating the board
+     * @param startNanos value of {@link System#nanoTime()} before generating the board
+     * @param bombGrid   generated board
+     */
+    public static void recordBoardGeneration(BoardGenerationEvent event, long startNanos, BombGrid bombGrid) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.rows = bombGrid.getNumRows();
+            event.columns = bombGrid.getNumColumns();
+            event.bombs = bombGrid.getNumBombs();
+            event.commit();
+        }
+        if (ENABLED) boardGeneration.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records that the cells around a clicked cell have been revealed.
+     *
+     * @param event         event begun before revealing the cells
+     * @param row           row index of the clicked cell
+     * @param column        column index of the clicked cell
+     * @param cellsRevealed number of cells revealed by the click
+     */
+    public static void recordReveal(RevealEvent event, int row, int column, int cellsRevealed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.row = row;
+            event.column = column;
+            event.cellsRevealed = cellsRevealed;
+            event.commit();
+        }
+        if (ENABLED) floodFillSize.record(cellsRevealed);
+    }
+
+    /**
+     * Records how long it took from a click until the scene
+     * was laid out by the next pulse, which happens right
+     * before the changes are painted.
+     *
+     * @param clickNanos value of {@link System#nanoTime()} when the click was received
+     */
+    public static void recordClickToPaint(long clickNanos) {
+        if (ENABLED) clickToPaint.record((System.nanoTime() - clickNanos) / 1000);
+    }
+
+    /**
+     * Records that a game has ended.
+     *
+     * @param event         event begun when the game ended
+     * @param startNanos    value of {@link System#nanoTime()} when the game ended
+     * @param won           true if the player won
+     * @param cellsRevealed number of cells revealed when the game ended
+     */
+    public static void recordGameOver(GameOverEvent event, long startNanos, boolean won, int cellsRevealed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.won = won;
+            event.cellsRevealed = cellsRevealed;
+            event.commit();
+        }
+        if (ENABLED) gameOver.record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records that the first frame of the game is about to be
+     * shown. Only the first call has any effect.
+     */
+    public static void recordFirstFrame() {
+        if (ENABLED) firstFrameMillis.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    /**
+     * Records that a cell has been clicked. Only the first
+     * call has any effect.
+     */
+    public static void recordFirstClick() {
+        if (ENABLED && firstClickMillis.get() < 0) {
+            firstClickMillis.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+    /**
+     * Records that a board has been taken from the {@link BoardSupply}.
+     *
+     * @param hit true if the board was ready, false if it had to be generated
+     */
+    public static void recordBoardSupply(boolean hit) {
+        if (!ENABLED) return;
+        if (hit) boardSupplyHits.increment();
+        else boardSupplyMisses.increment();
+    }
+
+    /**
+     * Records that a game timer thread has started.
+     */
+    public static void timerStarted() {
+        timerThreads.incrementAndGet();
+    }
+
+    /**
+     * Gets the metrics as an MXBean.
+     *
+     * @return the metrics
+     */
+    public static MetricsMXBean get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public long getBoardsGenerated() {
+        return boardGeneration.getCount();
+    }
+
+    @Override
+    public long getBoardGenerationP50Micros() {
+        return boardGeneration.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getBoardGenerationP99Micros() {
+        return boardGeneration.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRevealsHandled() {
+        return floodFillSize.getCount();
+    }
+
+    @Override
+    public long getClickToPaintP50Micros() {
+        return clickToPaint.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getClickToPaintP99Micros() {
+        return clickToPaint.getValueAtPercentile(99);
+    }
+
+    @Override
+    public double getFloodFillMeanCells() {
+        return floodFillSize.getMean();
+    }
+
+    @Override
+    public long getFloodFillMaxCells() {
+        return floodFillSize.getMax();
+    }
+
+    @Override
+    public long getGamesOver() {
+        return gameOver.getCount();
+    }
+
+    @Override
+    public long getBoardSupplyHits() {
+        return boardSupplyHits.sum();
+    }
+
+    @Override
+    public long getBoardSupplyMisses() {
+        return boardSupplyMisses.sum();
+    }
+
+    @Override
+    public long getTimeToFirstFrameMillis() {
+        return firstFrameMillis.get();
+    }
+
+    @Override
+    public long getTimeToFirstClickMillis() {
+        return firstClickMillis.get();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    @Override
+    public int getTimerThreadCount() {
+        return timerThreads.get();
+    }
+
+    @Override
+    public String dump() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return "MineSweeper metrics" + System.lineSeparator() +
+                "  " + boardGeneration + System.lineSeparator() +
+                "  " + clickToPaint + System.lineSeparator() +
+                "  " + floodFillSize + System.lineSeparator() +
+                "  " + gameOver + System.lineSeparator() +
+                "  board supply: hits=" + boardSupplyHits.sum() + " misses=" + boardSupplyMisses.sum() +
+                System.lineSeparator() +
+                "  startup: first frame=" + firstFrameMillis.get() + "ms first click=" + firstClickMillis.get() +
+                "ms" + System.lineSeparator() +
+                "  threads: live=" + threads.getThreadCount() + " peak=" + threads.getPeakThreadCount() +
+                " daemon=" + threads.getDaemonThreadCount() + " timers=" + timerThreads.get();
+    }
+
+    @Override
+    public void reset() {
+        boardGeneration.reset();
+        clickToPaint.reset();
+        floodFillSize.reset();
+        gameOver.reset();
+        boardSupplyHits.reset();
+        boardSupplyMisses.reset();
+    }
+
+    /**
+     * JFR event emitted when a {@link BombGrid} is generated.
+     */
+    @Name("com.nathanaelg.cmp168.minesweeper.BoardGeneration")
+    @Label("Board Generation")
+    @Category("MineSweeper")
+    @Description("Generation of the bombs and counts of a board")
+    public static final class BoardGenerationEvent extends Event {
+        @Label("Rows")
+        int rows;
+        @Label("Columns")
+        int columns;
+        @Label("Bombs")
+        int bombs;
+    }
+
+    /**
+     * JFR event emitted when a click reveals one or more cells.
+     */
+    @Name("com.nathanaelg.cmp168.minesweeper.Reveal")
+    @Label("Reveal")
+    @Category("MineSweeper")
+    @Description("Cells revealed by a single click, including flood fills")
+    public static final class RevealEvent extends Event {
+        @Label("Row")
+        int row;
+        @Label("Column")
+        int column;
+        @Label("Cells Revealed")
+        int cellsRevealed;
+    }
+
+    /**
+     * JFR event emitted when a game ends, covering the
+     * revealing of the board up to showing the dialog.
+     */
+    @Name("com.nathanaelg.cmp168.minesweeper.GameOver")
+    @Label("Game Over")
+    @Category("MineSweeper")
+    @Description("End of a game, up to showing the play again dialog")
+    public static final class GameOverEvent extends Event {
+        @Label("Won")
+        boolean won;
+        @Label("Cells Revealed")
+        int cellsRevealed;
+    }
+}
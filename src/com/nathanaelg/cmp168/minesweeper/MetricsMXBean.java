@@ -0,0 +1,65 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+/**
+ * Management interface used to view the runtime
+ * {@link Metrics} of the game through JMX (e.g. with
+ * JConsole or Java Mission Control).
+ * <p>
+ * Durations are given in microseconds unless stated otherwise.
+ */
+public interface MetricsMXBean {
+
+    long getBoardsGenerated();
+
+    long getBoardGenerationP50Micros();
+
+    long getBoardGenerationP99Micros();
+
+    long getRevealsHandled();
+
+    long getClickToPaintP50Micros();
+
+    long getClickToPaintP99Micros();
+
+    double getFloodFillMeanCells();
+
+    long getFloodFillMaxCells();
+
+    long getGamesOver();
+
+    long getBoardSupplyHits();
+
+    long getBoardSupplyMisses();
+
+    /**
+     * Gets how long after the JVM started the first frame
+     * was shown, in milliseconds, or -1 if it has not been shown.
+     *
+     * @return time to the first frame
+     */
+    long getTimeToFirstFrameMillis();
+
+    /**
+     * Gets how long after the JVM started the first cell
+     * was clicked, in milliseconds, or -1 if none has been clicked.
+     *
+     * @return time to the first click
+     */
+    long getTimeToFirstClickMillis();
+
+    int getThreadCount();
+
+    int getTimerThreadCount();
+
+    /**
+     * Gets a printable summary of every metric.
+     *
+     * @return summary of every metric
+     */
+    String dump();
+
+    /**
+     * Clears every recorded value.
+     */
+    void reset();
+}
@@ -1,9 +1,12 @@
 package com.nathanaelg.cmp168.minesweeper;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.lang.management.ManagementFactory;
+
 /**
  * This MineSweeper game was created for my final project
  * of CMP 168 - Programming Methods II.
@@ -12,8 +15,24 @@ import javafx.stage.Stage;
  * primary stage. The functionality of the game including
  * the graphical user interface is handled by the
  * {@link GameDriver} class.
+ * <p>
+ * Images, sounds, videos and the {@link HighScores} are loaded on
+ * background threads once the stage is shown, so they do not delay
+ * the first frame.
+ * Running with {@code -Dminesweeper.exitAfterFirstFrame=true}
+ * prints how long after the JVM started the first frame was shown
+ * and then exits. This can be used to measure startup time, and as
+ * a training run to create a class data sharing archive that makes
+ * later starts faster:
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=minesweeper.jsa -Dminesweeper.exitAfterFirstFrame=true ... com.nathanaelg.cmp168.minesweeper.MineSweeper
+ * java -XX:SharedArchiveFile=minesweeper.jsa ... com.nathanaelg.cmp168.minesweeper.MineSweeper
+ * </pre>
+ * With {@code -Dminesweeper.metrics=true} the time to the first
+ * frame and to the first click are also reported by {@link Metrics}.
  */
 public class MineSweeper extends Application {
+    private static final boolean EXIT_AFTER_FIRST_FRAME = Boolean.getBoolean("minesweeper.exitAfterFirstFrame");
 
     public static void main(String[] args) {
         launch(args);
@@ -24,10 +43,23 @@ public class MineSweeper extends Application {
         GameDriver driver = new GameDriver(DifficultyLevel.EASY);
         Scene scene = new Scene(driver.getGamePane());
         scene.getStylesheets().add("/resources/css/styles.css");
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this); //only the first frame is of interest
+                Metrics.recordFirstFrame();
+                if (EXIT_AFTER_FIRST_FRAME) {
+                    System.out.println("First frame after " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms");
+                    Platform.exit();
+                }
+            }
+        });
         primaryStage.setScene(scene);
         primaryStage.setTitle("Mine Sweeper 💣");
         primaryStage.setWidth(1200);
         primaryStage.setHeight(1000);
         primaryStage.show();
+        Assets.loadInBackground();
+        HighScores.get(); //starts loading the high scores
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,239 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A board on the classic square grid whose bombs, counts and cell
+ * states are stored outside of the Java heap, either in memory or
+ * in a file mapped into memory.
+ * <p>
+ * Each cell takes one byte: the count in the low 4 bits, whether it
+ * has a bomb in the next bit, and its state ({@link SharedBoard#HIDDEN},
+ * {@link SharedBoard#FLAGGED} or {@link SharedBoard#REVEALED}) in the
+ * 2 bits after that. The bytes are split into chunks of whole rows of
+ * at most 1 GB each, so a board can have more than
+ * {@link Integer#MAX_VALUE} cells while every row is still addressed
+ * with an int. The garbage collector only sees one small buffer object
+ * per chunk, so the size of the board does not affect its pauses.
+ * {@link BoardAnalyzer} reads a board row by row without copying it,
+ * but still needs 4 bytes of heap per cell and only analyzes boards
+ * with at most {@link Integer#MAX_VALUE} cells.
+ * <p>
+ * Bombs are placed the same way {@link BombGrid} places them, so a board
+ * generated with the same size and random number generator has its
+ * bombs in the same cells as the BombGrid.
+ * <p>
+ * Boards allocated in memory count towards the limit set by
+ * {@code -XX:MaxDirectMemorySize}; larger boards should be mapped
+ * from a file, which only takes the memory the operating system
+ * gives its page cache.
+ * <p>
+ * NOTE: This class is not thread safe. Boards played by several
+ * players at once should use a {@link SharedBoard}.
+ */
+public final class OffHeapBoard implements BoardView {
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final int COUNT_MASK = 0x0F;
+    private static final int BOMB_BIT = 0x10;
+    private static final int STATE_SHIFT = 5;
+    private static final int STATE_MASK = 0x3 << STATE_SHIFT;
+
+    private final int numRows;
+    private final int numColumns;
+    private final long numBombs;
+    private final int rowsPerChunk; //number of rows in every chunk but the last one
+    private final ByteBuffer[] chunks;
+
+    private OffHeapBoard(int numRows, int numColumns, long numBombs, ByteBuffer[] chunks, int rowsPerChunk) {
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numBombs = numBombs;
+        this.chunks = chunks;
+        this.rowsPerChunk = rowsPerChunk;
+    }
+
+    /**
+     * Creates a board stored in memory outside of the Java heap,
+     * placing the bombs with the random number generator passed
+     * as an argument.
+     *
+     * @param numRows    number of rows in the board
+     * @param numColumns number of columns in the board
+     * @param numBombs   total number of bombs in the board
+     * @param random     random number generator used to place the bombs
+     * @return new board where every cell is hidden
+     */
+    public static OffHeapBoard allocate(int numRows, int numColumns, long numBombs, Random random) {
+        int rowsPerChunk = rowsPerChunk(numRows, numColumns, numBombs);
+        ByteBuffer[] chunks = new ByteBuffer[(numRows + rowsPerChunk - 1) / rowsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkRows(numRows, rowsPerChunk, i) * numColumns);
+        }
+        OffHeapBoard board = new OffHeapBoard(numRows, numColumns, numBombs, chunks, rowsPerChunk);
+        board.generate(random);
+        return board;
+    }
+
+    /**
+     * Creates a board stored in a file that is mapped into memory,
+     * placing the bombs with the random number generator passed
+     * as an argument. The file is created if it does not exist
+     * and overwritten if it does.
+     *
+     * @param file       file the board is stored in
+     * @param numRows    number of rows in the board
+     * @param numColumns number of columns in the board
+     * @param numBombs   total number of bombs in the board
+     * @param random     random number generator used to place the bombs
+     * @return new board where every cell is hidden
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static OffHeapBoard map(Path file, int numRows, int numColumns, long numBombs, Random random)
+            throws IOException {
+        int rowsPerChunk = rowsPerChunk(numRows, numColumns, numBombs);
+        ByteBuffer[] chunks = new ByteBuffer[(numRows + rowsPerChunk - 1) / rowsPerChunk];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                int size = chunkRows(numRows, rowsPerChunk, i) * numColumns;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size); //stays mapped after closing
+                position += size;
+            }
+        }
+        OffHeapBoard board = new OffHeapBoard(numRows, numColumns, numBombs, chunks, rowsPerChunk);
+        board.generate(random);
+        return board;
+    }
+
+    /**
+     * Checks the size of a board and gets the number of
+     * whole rows that fit in a chunk.
+     */
+    private static int rowsPerChunk(int numRows, int numColumns, long numBombs) {
+        if (numRows <= 0 || numColumns <= 0) throw new IllegalArgumentException("grid dimensions must be positive");
+        if (numBombs < 0 || numBombs > (long) numRows * numColumns)
+            throw new IllegalArgumentException("number of bombs must be between 0 and the number of cells");
+        return Math.max(1, Math.min(numRows, MAX_CHUNK_BYTES / numColumns));
+    }
+
+    private static int chunkRows(int numRows, int rowsPerChunk, int chunk) {
+        return Math.min(rowsPerChunk, numRows - chunk * rowsPerChunk);
+    }
+
+    /**
+     * Places the bombs at random, then fills in the counts with
+     * a {@link BoxSum} over the rows of bombs, the same way
+     * {@link BombGrid} does for its largest boards.
+     *
+     * @param random random number generator used to place the bombs
+     */
+    private void generate(Random random) {
+        long count = 0;
+        while (count < numBombs) {
+            int row = random.nextInt(numRows);
+            int column = random.nextInt(numColumns);
+
+            ByteBuffer chunk = this.chunks[row / rowsPerChunk];
+            int offset = this.offset(row, column);
+            if (chunk.get(offset) == 0) {
+                chunk.put(offset, (byte) BOMB_BIT);
+                count++;
+            }
+        }
+
+        byte[] bytes = new byte[numColumns];
+        BoxSum.count(numRows, numColumns, (row, bombs) -> {
+            this.chunks[row / rowsPerChunk].get(this.offset(row, 0), bytes);
+            for (int j = 0; j < numColumns; j++) bombs[j] = (bytes[j] & BOMB_BIT) >>> 4;
+        }, (row, counts) -> {
+            //the bombs of a row are still there until its counts are stored
+            ByteBuffer chunk = this.chunks[row / rowsPerChunk];
+            chunk.get(this.offset(row, 0), bytes);
+            for (int j = 0; j < numColumns; j++) bytes[j] = (byte) (bytes[j] & BOMB_BIT | counts[j]);
+            chunk.put(this.offset(row, 0), bytes);
+        });
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    @Override
+    public long getNumCells() {
+        return (long) numRows * numColumns;
+    }
+
+    @Override
+    public long getTotalBombs() {
+        return numBombs;
+    }
+
+    @Override
+    public boolean isBombAtLocation(int row, int column) {
+        return (this.get(row, column) & BOMB_BIT) != 0;
+    }
+
+    @Override
+    public int getCountAtLocation(int row, int column) {
+        return this.get(row, column) & COUNT_MASK;
+    }
+
+    /**
+     * Gets the state of a cell.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return {@link SharedBoard#HIDDEN}, {@link SharedBoard#FLAGGED} or {@link SharedBoard#REVEALED}
+     */
+    public int getState(int row, int column) {
+        return (this.get(row, column) & STATE_MASK) >>> STATE_SHIFT;
+    }
+
+    /**
+     * Changes the state of a cell.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @param state  {@link SharedBoard#HIDDEN}, {@link SharedBoard#FLAGGED} or {@link SharedBoard#REVEALED}
+     */
+    public void setState(int row, int column, int state) {
+        if (state != SharedBoard.HIDDEN && state != SharedBoard.FLAGGED && state != SharedBoard.REVEALED)
+            throw new IllegalArgumentException("unknown state: " + state);
+        int cell = this.get(row, column);
+        this.chunks[row / rowsPerChunk].put(this.offset(row, column), (byte) (cell & ~STATE_MASK | state << STATE_SHIFT));
+    }
+
+    /**
+     * Writes the changes made to a board mapped from a file back
+     * to the file. Does nothing if the board is stored in memory.
+     */
+    public void force() {
+        for (ByteBuffer chunk : this.chunks) {
+            if (chunk instanceof MappedByteBuffer mapped) mapped.force();
+        }
+    }
+
+    private int get(int row, int column) {
+        return this.chunks[row / rowsPerChunk].get(this.offset(row, column));
+    }
+
+    private int offset(int row, int column) {
+        Objects.checkIndex(row, numRows);
+        Objects.checkIndex(column, numColumns);
+        return (row % rowsPerChunk) * numColumns + column;
+    }
+}
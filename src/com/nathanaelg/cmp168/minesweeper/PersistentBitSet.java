@@ -0,0 +1,187 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+/**
+ * An immutable set of bits that shares its structure
+ * with the versions it was derived from.
+ * <p>
+ * The bits are stored in a tree: leaves hold chunks of
+ * {@value #LEAF_BITS} bits and every branch has up to
+ * {@value #BRANCH_SIZE} children. Chunks that are all zero
+ * are not stored at all. Changing a bit copies only the leaf
+ * holding it and the branches above that leaf, so a new version
+ * costs memory in proportion to the chunks that changed, not to
+ * the size of the set.
+ * <p>
+ * Changes are made through an {@link Editor}. An editor copies
+ * each chunk at most once, no matter how many of its bits are
+ * changed, and only the versions it hands out are shared.
+ */
+public final class PersistentBitSet {
+    /**
+     * Number of bits in each leaf.
+     */
+    public static final int LEAF_BITS = 1024;
+    /**
+     * Number of children of each branch.
+     */
+    public static final int BRANCH_SIZE = 32;
+    private static final int LEAF_SHIFT = 10;
+    private static final int BRANCH_SHIFT = 5;
+    private static final int WORDS_PER_LEAF = LEAF_BITS / 64;
+
+    private final int size;
+    private final int depth; //number of levels of branches above the leaves
+    private final Object root; //a Leaf if depth is 0, otherwise a Branch; null if all bits are zero
+
+    private PersistentBitSet(int size, int depth, Object root) {
+        this.size = size;
+        this.depth = depth;
+        this.root = root;
+    }
+
+    /**
+     * Creates a set of bits that are all zero.
+     *
+     * @param size number of bits in the set
+     * @return empty set
+     */
+    public static PersistentBitSet empty(int size) {
+        if (size < 0) throw new IllegalArgumentException("size must not be negative");
+        int depth = 0;
+        long capacity = LEAF_BITS;
+        while (capacity < size) {
+            capacity <<= BRANCH_SHIFT;
+            depth++;
+        }
+        return new PersistentBitSet(size, depth, null);
+    }
+
+    /**
+     * Gets the number of bits in the set.
+     *
+     * @return number of bits in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the value of a bit.
+     *
+     * @param index index of the bit
+     * @return true if the bit is set
+     */
+    public boolean get(int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("index: " + index);
+        Object node = this.root;
+        for (int level = this.depth; level > 0; level--) {
+            if (node == null) return false;
+            node = ((Branch) node).children[childIndex(index, level)];
+        }
+        if (node == null) return false;
+        return (((Leaf) node).words[(index >>> 6) & (WORDS_PER_LEAF - 1)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Creates an editor whose changes start from this version.
+     *
+     * @return new editor
+     */
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    private static int childIndex(int index, int level) {
+        return (index >>> (LEAF_SHIFT + BRANCH_SHIFT * (level - 1))) & (BRANCH_SIZE - 1);
+    }
+
+    /**
+     * Makes changes to a {@link PersistentBitSet}. Nodes
+     * created by the editor are changed in place until the
+     * next call to {@link #toPersistent()}; all other nodes
+     * are copied the first time they are changed.
+     */
+    public static final class Editor {
+        private final int size;
+        private final int depth;
+        private Object root;
+        private Object owner; //marks the nodes this editor may change in place
+
+        private Editor(PersistentBitSet base) {
+            this.size = base.size;
+            this.depth = base.depth;
+            this.root = base.root;
+            this.owner = new Object();
+        }
+
+        /**
+         * Sets the value of a bit.
+         *
+         * @param index index of the bit
+         * @param value new value of the bit
+         */
+        public void set(int index, boolean value) {
+            if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException("index: " + index);
+            this.root = set(this.root, this.depth, index, value);
+        }
+
+        private Object set(Object node, int level, int index, boolean value) {
+            if (level == 0) {
+                Leaf leaf = (Leaf) node;
+                if (leaf == null) {
+                    if (!value) return null;
+                    leaf = new Leaf(this.owner, new long[WORDS_PER_LEAF]);
+                } else if (leaf.owner != this.owner) {
+                    leaf = new Leaf(this.owner, leaf.words.clone());
+                }
+                int word = (index >>> 6) & (WORDS_PER_LEAF - 1);
+                if (value) leaf.words[word] |= 1L << index;
+                else leaf.words[word] &= ~(1L << index);
+                return leaf;
+            }
+
+            Branch branch = (Branch) node;
+            if (branch == null) {
+                if (!value) return null;
+                branch = new Branch(this.owner, new Object[BRANCH_SIZE]);
+            } else if (branch.owner != this.owner) {
+                branch = new Branch(this.owner, branch.children.clone());
+            }
+            int child = childIndex(index, level);
+            branch.children[child] = set(branch.children[child], level - 1, index, value);
+            return branch;
+        }
+
+        /**
+         * Creates a version holding all changes made so far.
+         * The editor can keep being used afterwards; later
+         * changes do not affect the returned version.
+         *
+         * @return version holding all changes made so far
+         */
+        public PersistentBitSet toPersistent() {
+            this.owner = new Object(); //nodes created so far are now shared
+            return new PersistentBitSet(this.size, this.depth, this.root);
+        }
+    }
+
+    private static final class Leaf {
+        private final Object owner;
+        private final long[] words;
+
+        private Leaf(Object owner, long[] words) {
+            this.owner = owner;
+            this.words = words;
+        }
+    }
+
+    private static final class Branch {
+        private final Object owner;
+        private final Object[] children;
+
+        private Branch(Object owner, Object[] children) {
+            this.owner = owner;
+            this.children = children;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import javafx.application.Platform;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shows the probability that each hidden {@link Cell}
+ * contains a bomb by tinting it red.
+ * <p>
+ * The probabilities are computed by a {@link ProbabilitySolver}
+ * on background threads. Every call to {@link #update(Cell[][])}
+ * cancels the computation started by the previous call, so
+ * only the latest board is ever worked on. Once a computation
+ * finishes, only the tint of each cell is handed to the
+ * JavaFX Application Thread.
+ */
+public class ProbabilityOverlay {
+    /**
+     * Time the solver may take for each update, enumerating
+     * exactly for the first half and sampling for the rest.
+     */
+    private static final long TIME_BUDGET_NANOS = 100_000_000L;
+    /**
+     * Number of different tints used to show probabilities.
+     */
+    private static final int LEVELS = 20;
+    /**
+     * Inline styles for each tint. The -cell-shade color is
+     * defined by the stylesheet for each shade of cell.
+     */
+    private static final String[] STYLES = new String[LEVELS + 1];
+    /**
+     * Stack size of the worker threads, since the solver
+     * searches recursively through large frontier components.
+     */
+    private static final long WORKER_STACK_SIZE = 16L * 1024 * 1024;
+
+    static {
+        for (int level = 0; level <= LEVELS; level++) {
+            STYLES[level] = String.format(Locale.ROOT, "-fx-background-color: -cell-shade, rgba(255, 0, 0, %.2f);",
+                    0.75 * level / LEVELS);
+        }
+    }
+
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+    private ProbabilitySolver solver;
+    private Future<?> pending;
+    private long generation; //incremented on every update so stale results can be ignored
+
+    /**
+     * Creates an overlay with its own background threads.
+     * The threads are daemon threads, so they do not keep
+     * the application running.
+     */
+    public ProbabilityOverlay() {
+        this.coordinator = Executors.newSingleThreadExecutor(threadFactory("probability-coordinator", 0));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                threadFactory("probability-worker", WORKER_STACK_SIZE));
+    }
+
+    private static ThreadFactory threadFactory(String name, long stackSize) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, name + "-" + count.incrementAndGet(), stackSize);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+
+    /**
+     * Prepares the overlay for a new game played on
+     * the BombGrid passed as an argument. Any computation
+     * still running for the previous game is cancelled.
+     * <p>
+     * If the new board has the same topology as the previous
+     * one, the solver is kept along with the components it has
+     * already solved.
+     *
+     * @param bombGrid grid of the new game
+     */
+    public void reset(BombGrid bombGrid) {
+        this.cancel();
+        if (this.solver != null && this.solver.supports(bombGrid.getTopology())) {
+            this.solver.setNumBombs(bombGrid.getNumBombs());
+        } else {
+            this.solver = new ProbabilitySolver(bombGrid.getTopology(), bombGrid.getNumBombs(), this.workers, TIME_BUDGET_NANOS);
+        }
+    }
+
+    /**
+     * Starts computing the probabilities for the cells passed as
+     * an argument, cancelling any computation already running. The
+     * cells are tinted once the computation finishes.
+     * <p>
+     * NOTE: This method must be called on the JavaFX Application Thread.
+     *
+     * @param cells cells of the game, indexed by row and column
+     */
+    public void update(Cell[][] cells) {
+        this.cancel();
+        int numColumns = cells[0].length;
+        int[] revealedCounts = new int[cells.length * numColumns];
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                revealedCounts[i * numColumns + j] = cells[i][j].isHidden() ? -1 : cells[i][j].getCount();
+            }
+        }
+
+        ProbabilitySolver solver = this.solver;
+        long generation = this.generation;
+        this.pending = this.coordinator.submit(() -> {
+            double[] probabilities;
+            try {
+                probabilities = solver.compute(revealedCounts);
+            } catch (InterruptedException e) {
+                return; //a newer update replaced this one
+            }
+
+            byte[] levels = new byte[probabilities.length];
+            for (int i = 0; i < levels.length; i++) {
+                levels[i] = Double.isNaN(probabilities[i]) ? -1 : (byte) Math.round(probabilities[i] * LEVELS);
+            }
+            Platform.runLater(() -> {
+                if (generation == this.generation) apply(cells, levels);
+            });
+        });
+    }
+
+    /**
+     * Cancels the computation that is running, if any. Results
+     * of cancelled computations are never shown.
+     */
+    public void cancel() {
+        this.generation++;
+        if (this.pending != null) this.pending.cancel(true);
+        this.pending = null;
+    }
+
+    /**
+     * Cancels any running computation and removes the
+     * tint from all of the cells passed as an argument.
+     *
+     * @param cells cells of the game, indexed by row and column
+     */
+    public void clear(Cell[][] cells) {
+        this.cancel();
+        for (Cell[] row : cells) {
+            for (Cell cell : row) cell.clearOverlay();
+        }
+    }
+
+    private static void apply(Cell[][] cells, byte[] levels) {
+        int numColumns = cells[0].length;
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < numColumns; j++) {
+                int level = levels[i * numColumns + j];
+                if (level < 0) cells[i][j].clearOverlay();
+                else cells[i][j].showOverlay(STYLES[level]);
+            }
+        }
+    }
+}
@@ -0,0 +1,778 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the probability that each hidden cell
+ * of a board contains a bomb, based only on what the
+ * player can see (the counts of the revealed cells
+ * and the total number of bombs).
+ * <p>
+ * Hidden cells next to at least one revealed cell make
+ * up the "frontier". The frontier is split into independent
+ * components (cells that share no revealed neighbour cannot
+ * influence each other), and the bomb arrangements of every
+ * component are enumerated. Each call to {@link #compute(int[])}
+ * has a single time limit shared by all of its components: they are
+ * enumerated exactly during the first half of it, and a component
+ * whose enumeration is not done by then is sampled during the rest
+ * of it instead. Each sample
+ * is weighted by the inverse of the probability of drawing it, so the
+ * samples estimate the number of arrangements without favouring the
+ * ones that take fewer random choices; the probabilities of sampled
+ * components are still only approximate. A component for which not
+ * even one arrangement was found in time is treated like the cells
+ * outside of the frontier, and so is every component that has not
+ * been started by the time the limit has passed, so the time a call
+ * takes does not grow with the number of components.
+ * <p>
+ * The results of each component enumerated exactly are cached, so
+ * after a move only the components that actually changed are
+ * enumerated again. Sampled results are never cached.
+ * <p>
+ * Components are then weighted against each other by how many
+ * ways the rest of the bombs can be placed, so when every component
+ * was enumerated exactly, the probabilities are exact as well.
+ */
+public class ProbabilitySolver {
+    /**
+     * Value used for cells that do not have a probability,
+     * i.e. cells that have been revealed.
+     */
+    public static final double NONE = Double.NaN;
+    private static final int CHECK_INTERVAL = 4096; //search nodes between deadline checks
+    private static final int MAX_CACHED_COMPONENTS = 4096;
+
+    private final Topology topology;
+    private volatile int numBombs; //changed when the solver is reused for a new game
+    private final ExecutorService workers;
+    private final long timeBudgetNanos;
+    private final Map<ComponentKey, Solutions> cache;
+
+    /**
+     * Creates a solver for boards with the given topology
+     * and number of bombs.
+     *
+     * @param topology        topology of the board
+     * @param numBombs        total number of bombs on the board
+     * @param workers         pool used to enumerate components in parallel
+     * @param timeBudgetNanos time allowed for each call to {@link #compute(int[])},
+     *                        half of it for enumerating and half for sampling
+     */
+    public ProbabilitySolver(Topology topology, int numBombs, ExecutorService workers, long timeBudgetNanos) {
+        this.topology = topology;
+        this.numBombs = numBombs;
+        this.workers = workers;
+        this.timeBudgetNanos = timeBudgetNanos;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Computes the bomb probability of every cell.
+     * <p>
+     * The argument holds, for every flat index, the count
+     * of the cell if it has been revealed and a negative
+     * number if it is still hidden. Flags are ignored since
+     * they are only the player's guesses.
+     *
+     * @param revealedCounts count of every revealed cell, negative for hidden cells
+     * @return probability from 0 to 1 for every hidden cell, {@link #NONE}
+     * for revealed cells and for every cell if the counts contradict each other
+     * @throws InterruptedException if the computation was cancelled
+     */
+    public double[] compute(int[] revealedCounts) throws InterruptedException {
+        long start = System.nanoTime();
+        long exactDeadline = start + this.timeBudgetNanos / 2;
+        long deadline = start + this.timeBudgetNanos;
+        int numCells = this.topology.getNumCells();
+        int[] neighbours = new int[this.topology.getMaxDegree()];
+        int[] parent = new int[numCells];
+        Arrays.fill(parent, -1); //-1 means the cell is not on the frontier
+
+        //join the hidden neighbours of every revealed cell into components
+        for (int cell = 0; cell < numCells; cell++) {
+            if (revealedCounts[cell] < 0) continue;
+            int degree = this.topology.neighbours(cell, neighbours);
+            int first = -1;
+            for (int k = 0; k < degree; k++) {
+                int neighbour = neighbours[k];
+                if (revealedCounts[neighbour] >= 0) continue;
+                if (parent[neighbour] < 0) parent[neighbour] = neighbour;
+                if (first < 0) first = neighbour;
+                else union(parent, first, neighbour);
+            }
+        }
+
+        //gather the cells and the revealed constraints of each component
+        int[] componentOf = new int[numCells];
+        Arrays.fill(componentOf, -1);
+        List<ComponentBuilder> builders = new ArrayList<>();
+        int numUnconstrained = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            if (revealedCounts[cell] >= 0) continue;
+            if (parent[cell] < 0) {
+                numUnconstrained++;
+                continue;
+            }
+            int root = find(parent, cell);
+            if (componentOf[root] < 0) {
+                componentOf[root] = builders.size();
+                builders.add(new ComponentBuilder());
+            }
+            componentOf[cell] = componentOf[root];
+            builders.get(componentOf[cell]).cells.add(cell);
+        }
+        for (int cell = 0; cell < numCells; cell++) {
+            if (revealedCounts[cell] < 0) continue;
+            int degree = this.topology.neighbours(cell, neighbours);
+            for (int k = 0; k < degree; k++) {
+                if (revealedCounts[neighbours[k]] < 0) {
+                    builders.get(componentOf[neighbours[k]]).constraints.add(cell);
+                    break;
+                }
+            }
+        }
+
+        //enumerate every component, reusing cached results where possible
+        List<Component> components = new ArrayList<>(builders.size());
+        List<Callable<Solutions>> tasks = new ArrayList<>();
+        for (ComponentBuilder builder : builders) {
+            Component component = builder.build(revealedCounts, componentOf);
+            components.add(component);
+            tasks.add(() -> solve(component, exactDeadline, deadline));
+        }
+        List<Future<Solutions>> futures = this.workers.invokeAll(tasks);
+        Solutions[] solutions = new Solutions[components.size()];
+        for (int i = 0; i < solutions.length; i++) {
+            try {
+                solutions[i] = futures.get(i).get();
+            } catch (ExecutionException | CancellationException e) {
+                solutions[i] = null;
+            }
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+            //without any arrangement the component says nothing, so its cells are weighted like unconstrained ones
+            if (solutions[i] == null || solutions[i].isEmpty()) {
+                solutions[i] = null;
+                numUnconstrained += components.get(i).cells.length;
+            }
+        }
+
+        double[] probabilities = combine(revealedCounts, components, solutions, numUnconstrained);
+        if (probabilities == null) {
+            //the samples of a component may only have found arrangements that leave no room for the rest of the bombs
+            boolean sampled = false;
+            for (int i = 0; i < solutions.length; i++) {
+                if (solutions[i] == null || solutions[i].exact) continue;
+                solutions[i] = null;
+                numUnconstrained += components.get(i).cells.length;
+                sampled = true;
+            }
+            if (sampled) probabilities = combine(revealedCounts, components, solutions, numUnconstrained);
+        }
+        if (probabilities == null) { //the board is inconsistent
+            probabilities = new double[numCells];
+            Arrays.fill(probabilities, NONE);
+        }
+        return probabilities;
+    }
+
+    /**
+     * Determines whether this solver can be used for boards with
+     * the given topology, keeping the components it has cached.
+     * This is the case if the topology has the same kind and size
+     * as the one of the solver, so every cell has the same neighbours.
+     *
+     * @param topology topology of the board
+     * @return true if the solver can be used for the board
+     */
+    public boolean supports(Topology topology) {
+        return topology == this.topology || topology.getKind() != Topology.Kind.CUSTOM
+                && topology.getKind() == this.topology.getKind()
+                && topology.getNumRows() == this.topology.getNumRows()
+                && topology.getNumColumns() == this.topology.getNumColumns();
+    }
+
+    /**
+     * Sets the total number of bombs on the board, e.g. when the
+     * solver is reused for a new game. The cached components do not
+     * depend on it, so they are kept.
+     *
+     * @param numBombs total number of bombs on the board
+     */
+    public void setNumBombs(int numBombs) {
+        this.numBombs = numBombs;
+    }
+
+    /**
+     * Clears the cached component results.
+     */
+    public void clearCache() {
+        this.cache.clear();
+    }
+
+    /**
+     * Weights the arrangements of each component by the number
+     * of ways the remaining bombs can be placed among the other
+     * components and the cells outside of the frontier, and turns
+     * them into probabilities.
+     * <p>
+     * For component i, the weight of its arrangements with k bombs is
+     * the sum over a and b of prefix(a) * suffix(b) * C(U, M - k - a - b),
+     * where prefix and suffix are the bomb distributions of the components
+     * before and after i, U is the number of cells outside of the frontier
+     * and M is the number of bombs. The inner sum over b is folded into
+     * one array per component going backwards, and the prefix is built up
+     * going forwards, so the whole pass takes O(K^2) time, where K is the
+     * number of frontier cells.
+     * <p>
+     * Every array is rescaled by its largest value as it is built. This
+     * multiplies all of a component's weights by the same factor, which
+     * cancels out in the probabilities.
+     *
+     * @return probability of every cell, or null if no arrangement of the
+     * components leaves room for the rest of the bombs
+     */
+    private double[] combine(int[] revealedCounts, List<Component> components, Solutions[] solutions, int numUnconstrained) {
+        int numCells = revealedCounts.length;
+        int numBombs = this.numBombs;
+        double[] probabilities = new double[numCells];
+        Arrays.fill(probabilities, NONE);
+
+        int[] solved = new int[solutions.length]; //unsolved components are left out of the weighting
+        int numSolved = 0;
+        int maxFrontierBombs = 0;
+        for (int i = 0; i < solutions.length; i++) {
+            if (solutions[i] == null) continue;
+            solved[numSolved++] = i;
+            maxFrontierBombs += solutions[i].counts.length - 1;
+        }
+
+        double[] unconstrainedWays = new double[maxFrontierBombs + 1];
+        double maxLog = Double.NEGATIVE_INFINITY;
+        for (int x = 0; x <= maxFrontierBombs; x++) {
+            maxLog = Math.max(maxLog, logChoose(numUnconstrained, numBombs - x));
+        }
+        if (maxLog == Double.NEGATIVE_INFINITY) return null;
+        for (int x = 0; x <= maxFrontierBombs; x++) {
+            unconstrainedWays[x] = Math.exp(logChoose(numUnconstrained, numBombs - x) - maxLog);
+        }
+
+        //suffixWays[i][x]: ways to complete the board given x bombs in the components before i,
+        //where x can be at most the number of cells in those components
+        int[] cellsBefore = new int[numSolved + 1];
+        for (int i = 0; i < numSolved; i++) {
+            cellsBefore[i + 1] = cellsBefore[i] + solutions[solved[i]].counts.length - 1;
+        }
+        double[][] suffixWays = new double[numSolved + 1][];
+        suffixWays[numSolved] = unconstrainedWays;
+        for (int i = numSolved - 1; i >= 0; i--) {
+            double[] counts = solutions[solved[i]].counts;
+            double[] next = suffixWays[i + 1];
+            double[] ways = new double[cellsBefore[i] + 1];
+            for (int x = 0; x < ways.length; x++) {
+                for (int k = 0; k < counts.length; k++) ways[x] += counts[k] * next[x + k];
+            }
+            suffixWays[i] = rescale(ways);
+        }
+
+        double[][] weights = new double[numSolved][];
+        double[] prefix = {1.0};
+        for (int i = 0; i < numSolved; i++) {
+            double[] counts = solutions[solved[i]].counts;
+            double[] next = suffixWays[i + 1];
+            weights[i] = new double[counts.length];
+            for (int k = 0; k < counts.length; k++) {
+                for (int a = 0; a < prefix.length; a++) {
+                    weights[i][k] += prefix[a] * next[a + k];
+                }
+            }
+
+            double[] nextPrefix = new double[prefix.length + counts.length - 1];
+            for (int a = 0; a < prefix.length; a++) {
+                for (int k = 0; k < counts.length; k++) nextPrefix[a + k] += prefix[a] * counts[k];
+            }
+            prefix = rescale(nextPrefix);
+        }
+
+        //prefix now holds the distribution of bombs over the whole frontier
+        double total = 0;
+        double frontierBombs = 0;
+        for (int x = 0; x < prefix.length; x++) {
+            double w = prefix[x] * unconstrainedWays[x];
+            total += w;
+            frontierBombs += w * x;
+        }
+        if (total == 0) return null;
+        if (numUnconstrained > 0) {
+            double unconstrained = (numBombs - frontierBombs / total) / numUnconstrained;
+            for (int cell = 0; cell < numCells; cell++) {
+                if (revealedCounts[cell] < 0) probabilities[cell] = unconstrained;
+            }
+        }
+        for (int i = 0; i < numSolved; i++) {
+            int[] cells = components.get(solved[i]).cells;
+            for (int v = 0; v < cells.length; v++) {
+                probabilities[cells[v]] = solutions[solved[i]].probability(v, weights[i]);
+            }
+        }
+        return probabilities;
+    }
+
+    private static double[] rescale(double[] values) {
+        double max = 0;
+        for (double value : values) max = Math.max(max, value);
+        if (max > 0) {
+            for (int i = 0; i < values.length; i++) values[i] /= max;
+        }
+        return values;
+    }
+
+    /**
+     * Enumerates the bomb arrangements of a component, first
+     * exactly and then by sampling if the enumeration is not
+     * done by the first deadline.
+     *
+     * @param exactDeadline time by which the enumeration should be done
+     * @param deadline      time by which the sampling should be done
+     * @return arrangements of the component (possibly none if
+     * sampling found none in time), or null if cancelled or if
+     * the component was not started before the deadline
+     */
+    private Solutions solve(Component component, long exactDeadline, long deadline) {
+        Solutions cached = this.cache.get(component.key);
+        if (cached != null) return cached;
+        if (System.nanoTime() > deadline) return null;
+
+        Search search = new Search(component, exactDeadline);
+        Solutions solutions = search.enumerate();
+        if (solutions != null) {
+            if (this.cache.size() >= MAX_CACHED_COMPONENTS) this.cache.clear();
+            this.cache.put(component.key, solutions);
+            return solutions;
+        }
+        if (Thread.currentThread().isInterrupted()) return null;
+        return search.sample(deadline); //approximate, so it is not cached
+    }
+
+    private static int find(int[] parent, int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    /**
+     * Natural logarithm of n choose k, or negative
+     * infinity if k is out of range.
+     */
+    private static double logChoose(long n, long k) {
+        if (k < 0 || k > n) return Double.NEGATIVE_INFINITY;
+        return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+    }
+
+    private static double logFactorial(long n) {
+        if (n < 2) return 0.0;
+        if (n < 20) {
+            double result = 0.0;
+            for (int i = 2; i <= n; i++) result += Math.log(i);
+            return result;
+        }
+        double x = n;
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x) + 1.0 / (12 * x) - 1.0 / (360 * x * x * x);
+    }
+
+    /**
+     * Cells and constraints of a component, collected while
+     * scanning the board.
+     */
+    private final class ComponentBuilder {
+        private final IntList cells = new IntList();
+        private final IntList constraints = new IntList();
+
+        private Component build(int[] revealedCounts, int[] componentOf) {
+            int[] cellArray = this.cells.toArray();
+            int[] constraintArray = this.constraints.toArray();
+            int[] vars = new int[topology.getMaxDegree()];
+            int component = componentOf[cellArray[0]];
+            int[] neighbours = new int[topology.getMaxDegree()];
+
+            int[] keyData = new int[1 + cellArray.length + 2 * constraintArray.length];
+            keyData[0] = cellArray.length;
+            System.arraycopy(cellArray, 0, keyData, 1, cellArray.length);
+
+            int[][] constraintVars = new int[constraintArray.length][];
+            int[] needed = new int[constraintArray.length];
+            for (int c = 0; c < constraintArray.length; c++) {
+                int cell = constraintArray[c];
+                keyData[1 + cellArray.length + 2 * c] = cell;
+                keyData[2 + cellArray.length + 2 * c] = revealedCounts[cell];
+                needed[c] = revealedCounts[cell];
+
+                int degree = topology.neighbours(cell, neighbours);
+                int numVars = 0;
+                for (int k = 0; k < degree; k++) {
+                    int neighbour = neighbours[k];
+                    if (revealedCounts[neighbour] < 0 && componentOf[neighbour] == component) {
+                        vars[numVars++] = Arrays.binarySearch(cellArray, neighbour);
+                    }
+                }
+                constraintVars[c] = Arrays.copyOf(vars, numVars);
+            }
+            return new Component(cellArray, constraintVars, needed, new ComponentKey(keyData));
+        }
+    }
+
+    /**
+     * A frontier component: its hidden cells (the variables)
+     * and the revealed cells constraining them.
+     */
+    private static final class Component {
+        private final int[] cells;
+        private final int[][] constraintVars;
+        private final int[] needed;
+        private final ComponentKey key;
+
+        private Component(int[] cells, int[][] constraintVars, int[] needed, ComponentKey key) {
+            this.cells = cells;
+            this.constraintVars = constraintVars;
+            this.needed = needed;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Identifies a component by its cells and the counts
+     * constraining them, so identical components found after
+     * later moves can reuse their cached arrangements.
+     */
+    private static final class ComponentKey {
+        private final int[] data;
+        private final int hash;
+
+        private ComponentKey(int[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ComponentKey && Arrays.equals(this.data, ((ComponentKey) o).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Arrangements of a component grouped by their number
+     * of bombs: how many arrangements there are with k bombs,
+     * and how many of those put a bomb in each cell.
+     * <p>
+     * Sampled arrangements are added with their weights, so the
+     * numbers are then only proportional to these counts.
+     */
+    private static final class Solutions {
+        private final double[] counts;
+        private final double[][] bombs;
+        private final boolean exact; //false if the arrangements were sampled
+
+        private Solutions(int numVars, boolean exact) {
+            this.counts = new double[numVars + 1];
+            this.bombs = new double[numVars + 1][];
+            this.exact = exact;
+        }
+
+        private void record(boolean[] assignment, int numBombs, double weight) {
+            this.counts[numBombs] += weight;
+            if (this.bombs[numBombs] == null) this.bombs[numBombs] = new double[assignment.length];
+            double[] row = this.bombs[numBombs];
+            for (int v = 0; v < assignment.length; v++) {
+                if (assignment[v]) row[v] += weight;
+            }
+        }
+
+        private void rescale() {
+            double max = 0;
+            for (double count : this.counts) max = Math.max(max, count);
+            if (max == 0) return;
+            for (int k = 0; k < this.counts.length; k++) {
+                this.counts[k] /= max;
+                if (this.bombs[k] == null) continue;
+                for (int v = 0; v < this.bombs[k].length; v++) this.bombs[k][v] /= max;
+            }
+        }
+
+        private boolean isEmpty() {
+            for (double count : this.counts) {
+                if (count > 0) return false;
+            }
+            return true;
+        }
+
+        private double probability(int var, double[] weights) {
+            double total = 0;
+            double withBomb = 0;
+            for (int k = 0; k < this.counts.length; k++) {
+                if (this.bombs[k] == null) continue;
+                total += this.counts[k] * weights[k];
+                withBomb += this.bombs[k][var] * weights[k];
+            }
+            return total == 0 ? NONE : withBomb / total;
+        }
+    }
+
+    /**
+     * Backtracking search over the arrangements of one component.
+     */
+    private static final class Search {
+        private final Component component;
+        private final int[][] varConstraints; //constraints each variable takes part in
+        private final int[] order; //variables in breadth-first order, so constraints fill up early
+        private final int[] remaining; //bombs still needed by each constraint
+        private final int[] unassigned; //variables not yet assigned in each constraint
+        private final boolean[] assignment;
+        private long deadline;
+        private long nodes;
+        private boolean aborted;
+
+        private Search(Component component, long deadline) {
+            this.component = component;
+            this.deadline = deadline;
+            int numVars = component.cells.length;
+            int[] degree = new int[numVars];
+            for (int[] vars : component.constraintVars) for (int v : vars) degree[v]++;
+            this.varConstraints = new int[numVars][];
+            for (int v = 0; v < numVars; v++) this.varConstraints[v] = new int[degree[v]];
+            Arrays.fill(degree, 0);
+            for (int c = 0; c < component.constraintVars.length; c++) {
+                for (int v : component.constraintVars[c]) this.varConstraints[v][degree[v]++] = c;
+            }
+            this.order = this.breadthFirstOrder();
+            this.remaining = new int[component.needed.length];
+            this.unassigned = new int[component.needed.length];
+            this.assignment = new boolean[numVars];
+        }
+
+        private int[] breadthFirstOrder() {
+            int numVars = this.varConstraints.length;
+            int[] order = new int[numVars];
+            boolean[] visited = new boolean[numVars];
+            int size = 0;
+            for (int start = 0; start < numVars; start++) {
+                if (visited[start]) continue;
+                visited[start] = true;
+                order[size++] = start;
+                for (int head = size - 1; head < size; head++) {
+                    for (int c : this.varConstraints[order[head]]) {
+                        for (int v : this.component.constraintVars[c]) {
+                            if (!visited[v]) {
+                                visited[v] = true;
+                                order[size++] = v;
+                            }
+                        }
+                    }
+                }
+            }
+            return order;
+        }
+
+        private void reset() {
+            for (int c = 0; c < this.remaining.length; c++) {
+                this.remaining[c] = this.component.needed[c];
+                this.unassigned[c] = this.component.constraintVars[c].length;
+            }
+            Arrays.fill(this.assignment, false);
+        }
+
+        /**
+         * Enumerates every arrangement.
+         *
+         * @return all arrangements, or null if the deadline passed first
+         */
+        private Solutions enumerate() {
+            this.reset();
+            Solutions solutions = new Solutions(this.assignment.length, true);
+            this.aborted = false;
+            this.enumerate(0, 0, solutions);
+            return this.aborted ? null : solutions;
+        }
+
+        /**
+         * Draws random arrangements until the deadline passes.
+         *
+         * @return sampled arrangements, or null if cancelled
+         */
+        private Solutions sample(long deadline) {
+            this.deadline = deadline;
+            Random random = new Random();
+            Solutions solutions = new Solutions(this.assignment.length, false);
+            do {
+                this.reset();
+                this.aborted = false;
+                this.sample(0, 0, 0, solutions, random);
+                if (Thread.currentThread().isInterrupted()) return null;
+            } while (!this.aborted);
+            solutions.rescale(); //the weights can be as small as 2^-n
+            return solutions;
+        }
+
+        /**
+         * Assigns variables from position {@code depth} of the
+         * breadth-first order onwards, trying a random value first
+         * and stopping at the first arrangement found.
+         * <p>
+         * At each variable the search keeps the value it tried first
+         * with probability 1/2 if the other value also leads to an
+         * arrangement, and with probability 1 otherwise (it only
+         * takes the second value when the first one leads nowhere).
+         * An arrangement reached after c such choices is therefore
+         * drawn with probability 2^-c, and is recorded with a weight
+         * of 2^c (divided by 2^n for n variables to keep it in range),
+         * so on average every arrangement counts the same.
+         *
+         * @param numChoices number of variables so far whose other value also leads to an arrangement
+         * @return true if the search should stop
+         */
+        private boolean sample(int depth, int numBombs, int numChoices, Solutions solutions, Random random) {
+            if (this.isPastDeadline()) return true;
+            if (depth == this.order.length) {
+                solutions.record(this.assignment, numBombs, Math.scalb(1.0, numChoices - this.order.length));
+                return true;
+            }
+
+            int var = this.order[depth];
+            boolean first = random.nextBoolean();
+            for (int attempt = 0; attempt < 2; attempt++) {
+                boolean bomb = attempt == 0 == first;
+                int choices = numChoices;
+                if (attempt == 0 && this.leadsToArrangement(depth, !bomb)) choices++;
+                if (this.aborted) return true;
+                if (this.assign(var, bomb)) {
+                    this.assignment[var] = bomb;
+                    boolean stop = this.sample(depth + 1, numBombs + (bomb ? 1 : 0), choices, solutions, random);
+                    this.assignment[var] = false;
+                    this.unassign(var, bomb);
+                    if (stop) return true;
+                } else {
+                    this.unassign(var, bomb);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks if giving the variable at position {@code depth}
+         * of the breadth-first order the given value leads to at
+         * least one arrangement.
+         */
+        private boolean leadsToArrangement(int depth, boolean bomb) {
+            int var = this.order[depth];
+            boolean found = this.assign(var, bomb) && this.findArrangement(depth + 1);
+            this.unassign(var, bomb);
+            return found;
+        }
+
+        private boolean findArrangement(int depth) {
+            if (this.isPastDeadline()) return false;
+            if (depth == this.order.length) return true;
+            int var = this.order[depth];
+            for (int attempt = 0; attempt < 2; attempt++) {
+                boolean bomb = attempt == 1;
+                boolean found = this.assign(var, bomb) && this.findArrangement(depth + 1);
+                this.unassign(var, bomb);
+                if (found || this.aborted) return found;
+            }
+            return false;
+        }
+
+        private boolean isPastDeadline() {
+            if (!this.aborted && ++this.nodes % CHECK_INTERVAL == 0
+                    && (System.nanoTime() > this.deadline || Thread.currentThread().isInterrupted())) {
+                this.aborted = true;
+            }
+            return this.aborted;
+        }
+
+        /**
+         * Assigns variables from position {@code depth} of the
+         * breadth-first order onwards.
+         *
+         * @return true if the search should stop
+         */
+        private boolean enumerate(int depth, int numBombs, Solutions solutions) {
+            if (this.isPastDeadline()) return true;
+            if (depth == this.order.length) {
+                solutions.record(this.assignment, numBombs, 1.0);
+                return false;
+            }
+
+            int var = this.order[depth];
+            for (int attempt = 0; attempt < 2; attempt++) {
+                boolean bomb = attempt == 1;
+                if (this.assign(var, bomb)) {
+                    this.assignment[var] = bomb;
+                    boolean stop = this.enumerate(depth + 1, numBombs + (bomb ? 1 : 0), solutions);
+                    this.assignment[var] = false;
+                    this.unassign(var, bomb);
+                    if (stop) return true;
+                } else {
+                    this.unassign(var, bomb);
+                }
+            }
+            return false;
+        }
+
+        private boolean assign(int var, boolean bomb) {
+            boolean valid = true;
+            for (int c : this.varConstraints[var]) {
+                this.unassigned[c]--;
+                if (bomb) this.remaining[c]--;
+                if (this.remaining[c] < 0 || this.remaining[c] > this.unassigned[c]) valid = false;
+            }
+            return valid;
+        }
+
+        private void unassign(int var, boolean bomb) {
+            for (int c : this.varConstraints[var]) {
+                this.unassigned[c]++;
+                if (bomb) this.remaining[c]++;
+            }
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        private void add(int value) {
+            if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.values[this.size++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * The state of a {@link BombGrid} being played by several players
+ * at once, e.g. one thread per player or per session.
+ * <p>
+ * Each cell is hidden, flagged or revealed, packed into 2 bits of a
+ * long[] so 32 cells share a word. Every change of state is a
+ * compare-and-set on the word holding the cell, so no locks are taken
+ * and a player is never blocked by another. A cell only goes from
+ * hidden to revealed once: the player whose compare-and-set succeeds
+ * reveals and counts it, and only that player keeps spreading from it,
+ * so flood fills of different players that run into each other split
+ * the opening between them instead of revealing any cell twice.
+ * <p>
+ * Like in the single player game, flood fills do not reveal flagged
+ * cells, and a revealed cell can neither be flagged nor hidden again.
+ * <p>
+ * NOTE: Every method of this class may be called from any thread.
+ */
+public final class SharedBoard {
+    /**
+     * State of a cell that has not been revealed and has no flag.
+     */
+    public static final int HIDDEN = 0;
+    /**
+     * State of a cell that has a flag on it.
+     */
+    public static final int FLAGGED = 1;
+    /**
+     * State of a cell that has been revealed.
+     */
+    public static final int REVEALED = 2;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int CELLS_PER_WORD = 32;
+    private static final long STATE_MASK = 0b11;
+    private static final IntConsumer IGNORE = cell -> {};
+
+    private final BombGrid bombGrid;
+    private final Topology topology;
+    private final int[][] counts;
+    private final boolean[][] bombs;
+    private final int numColumns;
+    private final int numSafeCells; //number of cells without a bomb
+    private final long[] words; //state of each cell, 2 bits per cell
+    private final LongAdder numRevealed; //number of cells without a bomb that have been revealed
+    private volatile boolean exploded; //whether a cell with a bomb has been revealed
+    private final ThreadLocal<FloodFill> floodFills; //buffers of each player's flood fills, reused between reveals
+
+    /**
+     * Creates the state of a board where every cell is hidden.
+     *
+     * @param bombGrid board being played
+     */
+    public SharedBoard(BombGrid bombGrid) {
+        this.bombGrid = bombGrid;
+        this.topology = bombGrid.getTopology();
+        this.counts = bombGrid.getCountRows();
+        this.bombs = bombGrid.getBombRows();
+        this.numColumns = bombGrid.getNumColumns();
+        this.numSafeCells = bombGrid.getArea() - bombGrid.getNumBombs();
+        this.words = new long[(bombGrid.getArea() + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+        this.numRevealed = new LongAdder();
+        this.floodFills = ThreadLocal.withInitial(() -> new FloodFill(this.topology.getMaxDegree()));
+    }
+
+    /**
+     * Reveals a cell and, if its count is 0, all nearby cells,
+     * the same way clicking on it does in the single player game.
+     * Does nothing if the cell has a flag or has already been revealed.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return number of cells revealed by this call
+     */
+    public int reveal(int row, int column) {
+        return this.reveal(row, column, IGNORE);
+    }
+
+    /**
+     * Reveals a cell and, if its count is 0, all nearby cells,
+     * the same way clicking on it does in the single player game.
+     * Does nothing if the cell has a flag or has already been revealed.
+     * <p>
+     * Each cell revealed by this call is passed to the given consumer
+     * as soon as it is revealed, on the calling thread, so it can be
+     * shown to the player. No other call is ever given the same cell.
+     * <p>
+     * NOTE: If the consumer throws, the exception is passed on and the
+     * flood fill stops, but every cell revealed so far stays revealed
+     * and is still counted by {@link #getNumRevealed()}.
+     *
+     * @param row      row index of the cell
+     * @param column   column index of the cell
+     * @param revealed consumer of the index of each cell revealed by this call
+     * @return number of cells revealed by this call
+     */
+    public int reveal(int row, int column, IntConsumer revealed) {
+        int start = this.topology.index(row, column);
+        if (!this.tryReveal(start)) return 0;
+        //the state is updated before the consumer sees the cell, in case it throws
+        if (this.bombs[row][column]) {
+            this.exploded = true;
+            revealed.accept(start);
+            return 1;
+        }
+        if (this.counts[row][column] != 0) {
+            this.numRevealed.increment();
+            revealed.accept(start);
+            return 1;
+        }
+
+        //flood fill with an explicit stack, every cell is pushed by the call that revealed it so at most once
+        FloodFill floodFill = this.floodFills.get();
+        if (floodFill.inUse) floodFill = new FloodFill(this.topology.getMaxDegree()); //revealed from the consumer
+        floodFill.inUse = true;
+        int numRevealed = 1;
+        try {
+            revealed.accept(start);
+            int[] neighbours = floodFill.neighbours;
+            int[] stack = floodFill.stack;
+            int top = 0;
+            stack[top++] = start;
+            while (top > 0) {
+                int degree = this.topology.neighbours(stack[--top], neighbours);
+                for (int k = 0; k < degree; k++) {
+                    int neighbour = neighbours[k];
+                    int neighbourRow = neighbour / this.numColumns;
+                    int neighbourColumn = neighbour % this.numColumns;
+                    //a neighbour of an empty cell has no bomb, so only its state needs to be checked
+                    if (!this.tryReveal(neighbour)) continue;
+                    numRevealed++;
+                    revealed.accept(neighbour);
+                    if (this.counts[neighbourRow][neighbourColumn] == 0) {
+                        if (top == stack.length) stack = floodFill.stack = Arrays.copyOf(stack, stack.length * 2);
+                        stack[top++] = neighbour;
+                    }
+                }
+            }
+        } finally {
+            floodFill.inUse = false;
+            this.numRevealed.add(numRevealed);
+        }
+        return numRevealed;
+    }
+
+    /**
+     * Puts a flag on a hidden cell, or takes it off if it already
+     * has one. Does nothing if the cell has been revealed.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return true if the cell has a flag after this call
+     */
+    public boolean toggleFlag(int row, int column) {
+        int cell = this.topology.index(row, column);
+        int index = cell / CELLS_PER_WORD;
+        int shift = shift(cell);
+        while (true) {
+            long word = (long) WORDS.getVolatile(this.words, index);
+            long state = word >>> shift & STATE_MASK;
+            if (state == REVEALED) return false;
+            long flipped = word ^ (long) FLAGGED << shift;
+            if (WORDS.compareAndSet(this.words, index, word, flipped)) return state == HIDDEN;
+        }
+    }
+
+    /**
+     * Gets the state of a cell.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return {@link #HIDDEN}, {@link #FLAGGED} or {@link #REVEALED}
+     */
+    public int getState(int row, int column) {
+        int cell = this.topology.index(row, column);
+        long word = (long) WORDS.getVolatile(this.words, cell / CELLS_PER_WORD);
+        return (int) (word >>> shift(cell) & STATE_MASK);
+    }
+
+    /**
+     * Checks if a cell has been revealed.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return true if the cell has been revealed
+     */
+    public boolean isRevealed(int row, int column) {
+        return this.getState(row, column) == REVEALED;
+    }
+
+    /**
+     * Checks if a cell has a flag on it.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return true if the cell has a flag on it
+     */
+    public boolean hasFlag(int row, int column) {
+        return this.getState(row, column) == FLAGGED;
+    }
+
+    /**
+     * Gets the number of cells without a bomb that have been revealed.
+     * <p>
+     * NOTE: While other players are revealing cells, the number
+     * returned may leave out cells revealed during this call.
+     *
+     * @return number of cells without a bomb that have been revealed
+     */
+    public int getNumRevealed() {
+        return (int) this.numRevealed.sum();
+    }
+
+    /**
+     * Checks if every cell without a bomb has been revealed,
+     * i.e. the players have won.
+     *
+     * @return true if every cell without a bomb has been revealed
+     */
+    public boolean isCleared() {
+        return this.getNumRevealed() == this.numSafeCells;
+    }
+
+    /**
+     * Checks if a cell with a bomb has been revealed,
+     * i.e. the players have lost.
+     *
+     * @return true if a cell with a bomb has been revealed
+     */
+    public boolean hasExploded() {
+        return exploded;
+    }
+
+    /**
+     * Getter for the board being played.
+     *
+     * @return board being played
+     */
+    public BombGrid getBombGrid() {
+        return bombGrid;
+    }
+
+    /**
+     * Changes a cell from hidden to revealed.
+     *
+     * @param cell index of the cell
+     * @return true if this call revealed the cell, false if it has
+     * a flag or has been revealed (by this player or another one)
+     */
+    private boolean tryReveal(int cell) {
+        int index = cell / CELLS_PER_WORD;
+        int shift = shift(cell);
+        while (true) {
+            long word = (long) WORDS.getVolatile(this.words, index);
+            if ((word >>> shift & STATE_MASK) != HIDDEN) return false;
+            //a failed compare-and-set means another cell in the same word changed, so try again
+            if (WORDS.compareAndSet(this.words, index, word, word | (long) REVEALED << shift)) return true;
+        }
+    }
+
+    private static int shift(int cell) {
+        return (cell % CELLS_PER_WORD) * 2;
+    }
+
+    /**
+     * Buffers used by the flood fills of one thread. The stack
+     * grows to the largest opening the thread has revealed.
+     */
+    private static final class FloodFill {
+        private final int[] neighbours;
+        private int[] stack;
+        private boolean inUse; //true while a flood fill of this thread is running
+
+        private FloodFill(int maxDegree) {
+            this.neighbours = new int[maxDegree];
+            this.stack = new int[64];
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command line tool that checks a {@link SharedBoard} stays correct
+ * while many players clear it at once, then measures how fast they
+ * clear it. It does not need JavaFX.
+ * <p>
+ * For 1, 2, 4, ... up to the maximum number of threads, each round
+ * generates a board and starts every thread at a different cell.
+ * Each thread clicks on every cell without a bomb, wrapping around the
+ * board, and now and then puts a flag on a cell and takes it off again,
+ * so their flood fills keep running into each other and into flags.
+ * Once they are done, any cells left hidden by a flag are revealed.
+ * The round then checks that every cell without a bomb was given to
+ * exactly one call, that no cell with a bomb was, and that
+ * {@link SharedBoard#getNumRevealed()}, the number of cells given to
+ * the calls and the number of cells without a bomb are all equal.
+ * <p>
+ * The timed rounds do the same clicks without checking anything,
+ * and report the clicks and revealed cells per second.
+ * <p>
+ * Usage:
+ * <pre>
+ * java com.nathanaelg.cmp168.minesweeper.SharedBoardBenchmark
+ *     [--rows R] [--columns C] [--bombs B] [--rounds N] [--threads T] [--seed S]
+ * </pre>
+ */
+public class SharedBoardBenchmark {
+    private static final int FLAG_INTERVAL = 64; //clicks between flags put on and taken off
+
+    private final int numRows;
+    private final int numColumns;
+    private final int numBombs;
+    private final int numRounds;
+
+    /**
+     * Creates a benchmark of boards with the given size.
+     *
+     * @param numRows    number of rows in each board
+     * @param numColumns number of columns in each board
+     * @param numBombs   number of bombs in each board
+     * @param numRounds  number of boards checked and timed for each number of threads
+     */
+    public SharedBoardBenchmark(int numRows, int numColumns, int numBombs, int numRounds) {
+        if (numRows <= 0 || numColumns <= 0) throw new IllegalArgumentException("grid dimensions must be positive");
+        if (numBombs < 0 || numBombs >= (long) numRows * numColumns)
+            throw new IllegalArgumentException("number of bombs must leave at least one cell without a bomb");
+        if (numRounds <= 0) throw new IllegalArgumentException("number of rounds must be positive");
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numBombs = numBombs;
+        this.numRounds = numRounds;
+    }
+
+    /**
+     * Clears boards with the given number of threads, checking the
+     * state of each board once it is cleared.
+     *
+     * @param numThreads number of players clearing each board at once
+     * @param seed       seed of the first board, the next ones use seed + 1, seed + 2, ...
+     * @throws IllegalStateException if a board ends up in a wrong state
+     * @throws InterruptedException  if interrupted while waiting for the players
+     */
+    public void check(int numThreads, long seed) throws InterruptedException {
+        for (int round = 0; round < numRounds; round++) {
+            BombGrid bombGrid = new BombGrid(numRows, numColumns, numBombs, seed + round);
+            SharedBoard board = new SharedBoard(bombGrid);
+            AtomicIntegerArray accepted = new AtomicIntegerArray(bombGrid.getArea()); //calls given each cell
+            LongAdder returned = new LongAdder(); //sum of the cells each call says it revealed
+
+            this.play(board, numThreads, (row, column) -> {
+                returned.add(board.reveal(row, column, accepted::incrementAndGet));
+            });
+
+            //cells a flag kept hidden from every player
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numColumns; j++) {
+                    if (!bombGrid.isBombAtLocation(i, j) && !board.isRevealed(i, j)) {
+                        if (board.hasFlag(i, j)) throw new IllegalStateException("flag left at " + i + ", " + j);
+                        returned.add(board.reveal(i, j, accepted::incrementAndGet));
+                    }
+                }
+            }
+
+            int numSafeCells = bombGrid.getArea() - bombGrid.getNumBombs();
+            int numAccepted = 0;
+            for (int cell = 0; cell < accepted.length(); cell++) {
+                int row = cell / numColumns;
+                int column = cell % numColumns;
+                int times = accepted.get(cell);
+                if (bombGrid.isBombAtLocation(row, column) ? times != 0 : times != 1) {
+                    throw new IllegalStateException("cell " + row + ", " + column + " was revealed " + times
+                            + " times on board " + (seed + round) + " with " + numThreads + " threads");
+                }
+                numAccepted += times;
+            }
+            if (board.getNumRevealed() != numAccepted || numAccepted != numSafeCells || returned.sum() != numAccepted
+                    || !board.isCleared() || board.hasExploded()) {
+                throw new IllegalStateException("board " + (seed + round) + " with " + numThreads + " threads: "
+                        + board.getNumRevealed() + " counted, " + numAccepted + " given to calls, "
+                        + returned.sum() + " returned, " + numSafeCells + " without a bomb");
+            }
+        }
+    }
+
+    /**
+     * Clears boards with the given number of threads and
+     * measures how long it takes.
+     *
+     * @param numThreads number of players clearing each board at once
+     * @param seed       seed of the first board, the next ones use seed + 1, seed + 2, ...
+     * @return total number of nanoseconds spent clearing the boards
+     * @throws InterruptedException if interrupted while waiting for the players
+     */
+    public long time(int numThreads, long seed) throws InterruptedException {
+        long nanos = 0;
+        for (int round = 0; round < numRounds; round++) {
+            SharedBoard board = new SharedBoard(new BombGrid(numRows, numColumns, numBombs, seed + round));
+            long start = System.nanoTime();
+            this.play(board, numThreads, board::reveal);
+            nanos += System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    /**
+     * Gets the number of clicks each round of {@link #time(int, long)}
+     * makes, i.e. one per cell without a bomb for each thread.
+     *
+     * @param numThreads number of players clearing each board at once
+     * @return number of clicks in each round
+     */
+    public long getClicksPerRound(int numThreads) {
+        return ((long) numRows * numColumns - numBombs) * numThreads;
+    }
+
+    /**
+     * Runs one player per thread on a board, all starting at once from
+     * cells spread evenly over the board, and waits for all of them.
+     */
+    private void play(SharedBoard board, int numThreads, Click click) throws InterruptedException {
+        BombGrid bombGrid = board.getBombGrid();
+        int numCells = bombGrid.getArea();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] players = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            int first = (int) ((long) numCells * t / numThreads);
+            players[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int k = 0; k < numCells; k++) {
+                        int cell = first + k < numCells ? first + k : first + k - numCells;
+                        int row = cell / numColumns;
+                        int column = cell % numColumns;
+                        if (bombGrid.isBombAtLocation(row, column)) continue;
+                        if (k % FLAG_INTERVAL == 0 && board.toggleFlag(row, column)) board.toggleFlag(row, column);
+                        click.click(row, column);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "player-" + t);
+            players[t].start();
+        }
+        start.countDown();
+        for (Thread player : players) player.join();
+        if (failure.get() != null) throw new IllegalStateException("player failed", failure.get());
+    }
+
+    /**
+     * A click of a player on a cell.
+     */
+    @FunctionalInterface
+    private interface Click {
+        void click(int row, int column);
+    }
+
+    /**
+     * Runs the checks and the timed rounds with the arguments given
+     * on the command line, printing one line per number of threads.
+     *
+     * @param args command line arguments, see the usage above
+     */
+    public static void main(String[] args) {
+        int numRows = 1000;
+        int numColumns = 1000;
+        int numBombs = 150_000;
+        int numRounds = 5;
+        int maxThreads = 64;
+        long seed = System.nanoTime();
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--rows":
+                        numRows = Integer.parseInt(value);
+                        break;
+                    case "--columns":
+                        numColumns = Integer.parseInt(value);
+                        break;
+                    case "--bombs":
+                        numBombs = Integer.parseInt(value);
+                        break;
+                    case "--rounds":
+                        numRounds = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        maxThreads = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (maxThreads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+
+            SharedBoardBenchmark benchmark = new SharedBoardBenchmark(numRows, numColumns, numBombs, numRounds);
+            System.err.printf("%dx%d boards with %d bombs, %d rounds, seed %d%n",
+                    numRows, numColumns, numBombs, numRounds, seed);
+            for (int numThreads = 1; ; numThreads = Math.min(numThreads * 2, maxThreads)) {
+                benchmark.check(numThreads, seed);
+                benchmark.time(numThreads, seed); //warm up
+                double seconds = benchmark.time(numThreads, seed) / 1e9;
+                long clicks = benchmark.getClicksPerRound(numThreads) * numRounds;
+                long cells = ((long) numRows * numColumns - numBombs) * numRounds;
+                System.err.printf("%2d threads: ok, %.3f s, %.0f clicks/s, %.0f cells/s%n",
+                        numThreads, seconds, clicks / seconds, cells / seconds);
+                if (numThreads == maxThreads) break;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: SharedBoardBenchmark [--rows R] [--columns C] [--bombs B] [--rounds N]"
+                    + " [--threads T] [--seed S]");
+            System.exit(2);
+        } catch (IllegalStateException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
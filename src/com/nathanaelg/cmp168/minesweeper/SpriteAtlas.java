@@ -0,0 +1,159 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+/**
+ * A single image holding every sprite a {@link Cell} can
+ * show: the counts 0-9 in their colors, a bomb and a flag.
+ * <p>
+ * The sprites are drawn once for each size they are shown at,
+ * in device pixels, so cells only have to show a region of the
+ * atlas. Revealing a cell does not lay out any text, and no image
+ * is scaled when it is painted. Since every cell shows the same
+ * image, it is uploaded to the graphics card only once.
+ * <p>
+ * Atlases are cached by size; when the cells are resized a new
+ * atlas is drawn and the least recently used one is dropped.
+ * <p>
+ * NOTE: This class may only be used on the JavaFX application thread.
+ */
+public final class SpriteAtlas {
+    /**
+     * Index of the bomb sprite. The sprites of counts
+     * are indexed by the count itself.
+     */
+    public static final int BOMB = 10;
+    /**
+     * Index of the flag sprite.
+     */
+    public static final int FLAG = 11;
+
+    private static final int NUM_SPRITES = 12;
+    private static final int COLUMNS = 4; //sprites are laid out in a 4x3 grid to keep the image from getting too wide
+    private static final int MAX_CACHED = 4;
+
+    private static final Map<Long, SpriteAtlas> cache = new LinkedHashMap<>(MAX_CACHED * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SpriteAtlas> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+    private static Color[] colors; //color of each count, read when the first atlas is drawn
+    private static String fontFamily;
+
+    private final Image image;
+    private final Rectangle2D[] viewports;
+    private final int spriteSize;
+
+    private SpriteAtlas(int spriteSize, double outputScale) {
+        this.spriteSize = spriteSize;
+        int pixels = (int) Math.ceil(spriteSize * outputScale);
+        Canvas canvas = new Canvas(COLUMNS * pixels, Math.ceil((double) NUM_SPRITES / COLUMNS) * pixels);
+        GraphicsContext graphics = canvas.getGraphicsContext2D();
+        graphics.setFont(Font.font(fontFamily, pixels * 0.9));
+        graphics.setTextAlign(TextAlignment.CENTER);
+        graphics.setTextBaseline(VPos.CENTER);
+
+        this.viewports = new Rectangle2D[NUM_SPRITES];
+        for (int sprite = 0; sprite < NUM_SPRITES; sprite++) {
+            double x = (sprite % COLUMNS) * pixels;
+            double y = (sprite / COLUMNS) * pixels;
+            this.viewports[sprite] = new Rectangle2D(x, y, pixels, pixels);
+            if (sprite == BOMB) {
+                graphics.drawImage(Assets.bombImage(), x, y, pixels, pixels);
+            } else if (sprite == FLAG) {
+                graphics.drawImage(Assets.flagImage(), x, y, pixels, pixels);
+            } else {
+                graphics.setFill(colors[sprite]);
+                graphics.fillText(String.valueOf(sprite), x + pixels / 2.0, y + pixels / 2.0);
+            }
+        }
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        this.image = canvas.snapshot(parameters, null);
+    }
+
+    /**
+     * Gets the atlas whose sprites are shown at the given size,
+     * drawing it if it is not cached.
+     *
+     * @param spriteSize  width and height of each sprite on the screen
+     * @param outputScale number of device pixels in each pixel on the screen (e.g. 2 on HiDPI screens)
+     * @return atlas of the given size
+     */
+    public static SpriteAtlas get(int spriteSize, double outputScale) {
+        if (spriteSize <= 0) throw new IllegalArgumentException("sprite size must be positive");
+        if (colors == null) init();
+        long key = (long) spriteSize << 32 | Float.floatToIntBits((float) outputScale);
+        SpriteAtlas atlas = cache.get(key);
+        if (atlas == null) {
+            atlas = new SpriteAtlas(spriteSize, outputScale);
+            cache.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Reads the colors of the counts from the properties
+     * file and loads the font the counts are drawn in.
+     */
+    private static void init() {
+        ResourceBundle colorsBundle = ResourceBundle.getBundle("resources/bundles/colors");
+        String[] keys = {"zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine"};
+        Color[] colors = new Color[keys.length];
+        for (int i = 0; i < keys.length; i++) colors[i] = Color.web(colorsBundle.getString(keys[i]));
+
+        try (InputStream stream = ClassLoader.getSystemResourceAsStream("resources/fonts/Orbitron.ttf")) {
+            Font font = stream == null ? null : Font.loadFont(stream, 12);
+            fontFamily = font == null ? Font.getDefault().getFamily() : font.getFamily();
+        } catch (IOException e) {
+            e.printStackTrace();
+            fontFamily = Font.getDefault().getFamily();
+        }
+        SpriteAtlas.colors = colors;
+    }
+
+    /**
+     * Getter for the image holding every sprite.
+     *
+     * @return image holding every sprite
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the region of the image holding a sprite,
+     * in the pixels of the image.
+     *
+     * @param sprite a count from 0-9, {@link #BOMB} or {@link #FLAG}
+     * @return region of the image holding the sprite
+     */
+    public Rectangle2D getViewport(int sprite) {
+        return viewports[sprite];
+    }
+
+    /**
+     * Getter for the width and height of each sprite on the screen.
+     *
+     * @return size of each sprite on the screen
+     */
+    public int getSpriteSize() {
+        return spriteSize;
+    }
+}
@@ -0,0 +1,329 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.Arrays;
+
+/**
+ * Describes which cells of a board are neighbours
+ * of each other. The count grid of a {@link BombGrid},
+ * the flood fill done by the {@link GameDriver}, and any
+ * solving done on the board all ask the topology for
+ * the neighbours of a cell instead of assuming the usual
+ * 8-connected square grid.
+ * <p>
+ * Cells are identified by their flat index, which is
+ * {@code row * numColumns + column}.
+ * <p>
+ * The regular topologies (square, hexagonal, toroidal) are
+ * described by small tables of row and column offsets, so they
+ * take no extra memory no matter how big the board is. Custom
+ * topologies are given as adjacency lists in compressed sparse
+ * row (CSR) form.
+ * <p>
+ * NOTE: This class is final and {@link #neighbours(int, int[])}
+ * writes into a buffer supplied by the caller, so iterating over
+ * neighbours never allocates and every call site stays monomorphic.
+ */
+public final class Topology {
+
+    /**
+     * The different kinds of topologies supported.
+     */
+    public enum Kind {
+        /**
+         * Square cells touching on edges and corners (the classic game).
+         */
+        SQUARE_8,
+        /**
+         * Square cells touching on edges only.
+         */
+        SQUARE_4,
+        /**
+         * Hexagonal cells in "odd-r" layout, where odd rows are
+         * shifted half a cell to the right.
+         */
+        HEXAGONAL,
+        /**
+         * Square cells touching on edges and corners, where the
+         * edges of the board wrap around to the opposite side.
+         */
+        TOROIDAL,
+        /**
+         * Arbitrary adjacency given in CSR form.
+         */
+        CUSTOM
+    }
+
+    private static final int[] SQUARE_8_ROWS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] SQUARE_8_COLUMNS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] SQUARE_4_ROWS = {-1, 0, 0, 1};
+    private static final int[] SQUARE_4_COLUMNS = {0, -1, 1, 0};
+    private static final int[] HEX_EVEN_ROWS = {-1, -1, 0, 0, 1, 1};
+    private static final int[] HEX_EVEN_COLUMNS = {-1, 0, -1, 1, -1, 0};
+    private static final int[] HEX_ODD_ROWS = {-1, -1, 0, 0, 1, 1};
+    private static final int[] HEX_ODD_COLUMNS = {0, 1, -1, 1, 0, 1};
+
+    private final Kind kind;
+    private final int numRows;
+    private final int numColumns;
+    private final int maxDegree;
+    private final int[] rowOffsets; //offsets used by even rows (all rows for non-hexagonal grids)
+    private final int[] columnOffsets;
+    private final int[] oddRowOffsets; //offsets used by odd rows of hexagonal grids
+    private final int[] oddColumnOffsets;
+    private final int[] adjacencyStarts; //CSR row pointers, only used by custom topologies
+    private final int[] adjacency; //CSR column indices, only used by custom topologies
+
+    private Topology(Kind kind, int numRows, int numColumns, int[] rowOffsets, int[] columnOffsets,
+                     int[] oddRowOffsets, int[] oddColumnOffsets) {
+        checkDimensions(numRows, numColumns);
+        this.kind = kind;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.maxDegree = rowOffsets.length;
+        this.rowOffsets = rowOffsets;
+        this.columnOffsets = columnOffsets;
+        this.oddRowOffsets = oddRowOffsets;
+        this.oddColumnOffsets = oddColumnOffsets;
+        this.adjacencyStarts = null;
+        this.adjacency = null;
+    }
+
+    private Topology(int numRows, int numColumns, int[] adjacencyStarts, int[] adjacency) {
+        checkDimensions(numRows, numColumns);
+        int numCells = numRows * numColumns;
+        if (adjacencyStarts.length != numCells + 1 || adjacencyStarts[0] != 0
+                || adjacencyStarts[numCells] != adjacency.length)
+            throw new IllegalArgumentException("adjacency offsets do not describe " + numCells + " cells");
+
+        int maxDegree = 0;
+        for (int i = 0; i < numCells; i++) {
+            int degree = adjacencyStarts[i + 1] - adjacencyStarts[i];
+            if (degree < 0) throw new IllegalArgumentException("adjacency offsets must not decrease");
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        for (int neighbour : adjacency) {
+            if (neighbour < 0 || neighbour >= numCells)
+                throw new IllegalArgumentException("neighbour index out of range: " + neighbour);
+        }
+
+        //counts add each bomb to its neighbours while flood fills read the neighbours of each cell,
+        //which only agree if every cell is listed once by each of its neighbours and never by itself
+        int[] sorted = adjacency.clone();
+        for (int i = 0; i < numCells; i++) {
+            Arrays.sort(sorted, adjacencyStarts[i], adjacencyStarts[i + 1]);
+            for (int k = adjacencyStarts[i]; k < adjacencyStarts[i + 1]; k++) {
+                if (sorted[k] == i) throw new IllegalArgumentException("cell " + i + " is its own neighbour");
+                if (k > adjacencyStarts[i] && sorted[k] == sorted[k - 1])
+                    throw new IllegalArgumentException("cell " + i + " has neighbour " + sorted[k] + " more than once");
+            }
+        }
+        for (int i = 0; i < numCells; i++) {
+            for (int k = adjacencyStarts[i]; k < adjacencyStarts[i + 1]; k++) {
+                int neighbour = sorted[k];
+                if (Arrays.binarySearch(sorted, adjacencyStarts[neighbour], adjacencyStarts[neighbour + 1], i) < 0)
+                    throw new IllegalArgumentException("cell " + neighbour + " is a neighbour of cell " + i
+                            + " but not the other way around");
+            }
+        }
+
+        this.kind = Kind.CUSTOM;
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.maxDegree = maxDegree;
+        this.rowOffsets = null;
+        this.columnOffsets = null;
+        this.oddRowOffsets = null;
+        this.oddColumnOffsets = null;
+        this.adjacencyStarts = adjacencyStarts.clone();
+        this.adjacency = adjacency.clone();
+    }
+
+    /**
+     * Creates the classic topology where every cell has up
+     * to eight neighbours (left, top-left, top, top-right, right,
+     * bottom-right, bottom, bottom-left).
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @return 8-connected square topology
+     */
+    public static Topology square8(int numRows, int numColumns) {
+        return new Topology(Kind.SQUARE_8, numRows, numColumns,
+                SQUARE_8_ROWS, SQUARE_8_COLUMNS, SQUARE_8_ROWS, SQUARE_8_COLUMNS);
+    }
+
+    /**
+     * Creates a topology where every cell has up to four
+     * neighbours (left, top, right, bottom).
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @return 4-connected square topology
+     */
+    public static Topology square4(int numRows, int numColumns) {
+        return new Topology(Kind.SQUARE_4, numRows, numColumns,
+                SQUARE_4_ROWS, SQUARE_4_COLUMNS, SQUARE_4_ROWS, SQUARE_4_COLUMNS);
+    }
+
+    /**
+     * Creates a topology of hexagonal cells with up to six
+     * neighbours each. Odd rows are shifted half a cell to the right.
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @return hexagonal topology
+     */
+    public static Topology hexagonal(int numRows, int numColumns) {
+        return new Topology(Kind.HEXAGONAL, numRows, numColumns,
+                HEX_EVEN_ROWS, HEX_EVEN_COLUMNS, HEX_ODD_ROWS, HEX_ODD_COLUMNS);
+    }
+
+    /**
+     * Creates an 8-connected square topology whose edges
+     * wrap around, so every cell has exactly eight neighbours.
+     * <p>
+     * NOTE: The grid must have at least 3 rows and 3 columns,
+     * otherwise a cell would be its own neighbour.
+     *
+     * @param numRows    number of rows in the grid
+     * @param numColumns number of columns in the grid
+     * @return toroidal topology
+     */
+    public static Topology toroidal(int numRows, int numColumns) {
+        if (numRows < 3 || numColumns < 3)
+            throw new IllegalArgumentException("a toroidal grid needs at least 3 rows and 3 columns");
+        return new Topology(Kind.TOROIDAL, numRows, numColumns,
+                SQUARE_8_ROWS, SQUARE_8_COLUMNS, SQUARE_8_ROWS, SQUARE_8_COLUMNS);
+    }
+
+    /**
+     * Creates a topology from adjacency lists in compressed
+     * sparse row form. The neighbours of cell {@code i} are
+     * {@code adjacency[adjacencyStarts[i]]} up to (but not including)
+     * {@code adjacency[adjacencyStarts[i + 1]]}.
+     * <p>
+     * Neighbours go both ways: if cell {@code j} is a neighbour
+     * of cell {@code i}, then cell {@code i} must also be a neighbour
+     * of cell {@code j}. No cell may be its own neighbour or list
+     * the same neighbour twice.
+     * <p>
+     * NOTE: Both arrays are copied.
+     *
+     * @param numRows         number of rows in the grid
+     * @param numColumns      number of columns in the grid
+     * @param adjacencyStarts where the neighbours of each cell start,
+     *                        with one extra element at the end
+     * @param adjacency       flat indices of the neighbours of every cell
+     * @return custom topology
+     * @throws IllegalArgumentException if the arrays do not describe
+     *                                  neighbours that go both ways
+     */
+    public static Topology custom(int numRows, int numColumns, int[] adjacencyStarts, int[] adjacency) {
+        return new Topology(numRows, numColumns, adjacencyStarts, adjacency);
+    }
+
+    private static void checkDimensions(int numRows, int numColumns) {
+        if (numRows <= 0 || numColumns <= 0)
+            throw new IllegalArgumentException("grid dimensions must be positive");
+        if ((long) numRows * numColumns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("grid is too large to be indexed by an int");
+    }
+
+    /**
+     * Writes the flat indices of the neighbours of the
+     * cell passed in as an argument into the buffer.
+     * The buffer must be able to hold at least
+     * {@link #getMaxDegree()} elements.
+     *
+     * @param cell   flat index of the cell
+     * @param buffer array the neighbours are written into
+     * @return number of neighbours written into the buffer
+     */
+    public int neighbours(int cell, int[] buffer) {
+        if (this.kind == Kind.CUSTOM) {
+            int start = this.adjacencyStarts[cell];
+            int degree = this.adjacencyStarts[cell + 1] - start;
+            System.arraycopy(this.adjacency, start, buffer, 0, degree);
+            return degree;
+        }
+
+        int row = cell / this.numColumns;
+        int column = cell - row * this.numColumns;
+        boolean odd = (row & 1) == 1;
+        int[] dRows = odd ? this.oddRowOffsets : this.rowOffsets;
+        int[] dColumns = odd ? this.oddColumnOffsets : this.columnOffsets;
+        boolean wraps = this.kind == Kind.TOROIDAL;
+
+        int count = 0;
+        for (int k = 0; k < dRows.length; k++) {
+            int r = row + dRows[k];
+            int c = column + dColumns[k];
+            if (wraps) {
+                if (r < 0) r += this.numRows;
+                else if (r >= this.numRows) r -= this.numRows;
+                if (c < 0) c += this.numColumns;
+                else if (c >= this.numColumns) c -= this.numColumns;
+            } else if (r < 0 || r >= this.numRows || c < 0 || c >= this.numColumns) continue;
+            buffer[count++] = r * this.numColumns + c;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the flat index of the cell at the given location.
+     *
+     * @param row    row index of the cell
+     * @param column column index of the cell
+     * @return flat index of the cell
+     */
+    public int index(int row, int column) {
+        return row * this.numColumns + column;
+    }
+
+    /**
+     * Gets the kind of this topology.
+     *
+     * @return kind of topology
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter for the number of rows in the grid
+     *
+     * @return number of rows in the grid
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Getter for the number of columns in the grid
+     *
+     * @return number of columns in the grid
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Getter for the number of cells in the grid
+     *
+     * @return number of cells in the grid
+     */
+    public int getNumCells() {
+        return numRows * numColumns;
+    }
+
+    /**
+     * Gets the largest number of neighbours any
+     * cell can have. Buffers passed to
+     * {@link #neighbours(int, int[])} must be at least this big.
+     *
+     * @return maximum number of neighbours of a cell
+     */
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+}
@@ -0,0 +1,342 @@
+package com.nathanaelg.cmp168.minesweeper;
+
+import java.util.Random;
+
+/**
+ * Command line tool that checks going through a {@link Topology}
+ * did not make the classic square grid slower. It does not need JavaFX.
+ * <p>
+ * Each round generates a board and times, against the code the
+ * game had before topologies were added:
+ * <ul>
+ * <li>building a {@link BombGrid} on the square-8 topology, against
+ * placing the bombs the same way and counting them with the old
+ * nine branches per bomb, and with the generic loop over
+ * {@link Topology#neighbours(int, int[])} used by other topologies;</li>
+ * <li>clicking every cell without a bomb in order, with the flood fill
+ * of the {@link GameDriver} walking the topology with an explicit
+ * stack, against the old recursive flood fill with eight branches.</li>
+ * </ul>
+ * The flood fills of the game reveal {@link Cell}s, which need JavaFX,
+ * so both are run here on plain arrays, step for step the same.
+ * Every version is checked to give the same counts and reveal the
+ * same cells. The old flood fill recurses once per cell of an opening,
+ * so the rounds run on a thread with a large stack.
+ * <p>
+ * Usage:
+ * <pre>
+ * java com.nathanaelg.cmp168.minesweeper.TopologyBenchmark
+ *     [--rows R] [--columns C] [--bombs B] [--rounds N] [--seed S]
+ * </pre>
+ */
+public class TopologyBenchmark {
+    private static final long STACK_SIZE = 1L << 30; //enough for the old flood fill to recurse through any opening
+
+    private final int numRows;
+    private final int numColumns;
+    private final int numBombs;
+    private final int numRounds;
+    private final Topology topology;
+
+    //nanoseconds spent by each version in the last call to run()
+    private long baselineCountNanos;
+    private long squareCountNanos;
+    private long genericCountNanos;
+    private long baselineFillNanos;
+    private long topologyFillNanos;
+
+    /**
+     * Creates a benchmark of boards with the given size.
+     *
+     * @param numRows    number of rows in each board
+     * @param numColumns number of columns in each board
+     * @param numBombs   number of bombs in each board
+     * @param numRounds  number of boards timed
+     */
+    public TopologyBenchmark(int numRows, int numColumns, int numBombs, int numRounds) {
+        if (numRows <= 0 || numColumns <= 0) throw new IllegalArgumentException("grid dimensions must be positive");
+        if (numBombs < 0 || numBombs > (long) numRows * numColumns)
+            throw new IllegalArgumentException("number of bombs must be between 0 and the number of cells");
+        if (numRounds <= 0) throw new IllegalArgumentException("number of rounds must be positive");
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.numBombs = numBombs;
+        this.numRounds = numRounds;
+        this.topology = Topology.square8(numRows, numColumns);
+    }
+
+    /**
+     * Times every version on one board per round.
+     *
+     * @param seed seed of the first board, the next ones use seed + 1, seed + 2, ...
+     * @throws IllegalStateException if two versions do not give the same result
+     */
+    public void run(long seed) {
+        this.baselineCountNanos = 0;
+        this.squareCountNanos = 0;
+        this.genericCountNanos = 0;
+        this.baselineFillNanos = 0;
+        this.topologyFillNanos = 0;
+
+        for (int round = 0; round < numRounds; round++) {
+            long start = System.nanoTime();
+            BombGrid bombGrid = new BombGrid(numRows, numColumns, numBombs, this.topology, new Random(seed + round));
+            this.squareCountNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[][] baseline = this.countAroundBombs(this.placeBombs(new Random(seed + round)));
+            this.baselineCountNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[][] generic = this.countNeighbours(this.placeBombs(new Random(seed + round)));
+            this.genericCountNanos += System.nanoTime() - start;
+
+            int[][] counts = bombGrid.getCountRows();
+            boolean[][] bombs = bombGrid.getBombRows();
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numColumns; j++) {
+                    if (baseline[i][j] != counts[i][j] || generic[i][j] != counts[i][j])
+                        throw new IllegalStateException("counts differ at " + i + ", " + j + " on board " + (seed + round));
+                }
+            }
+
+            boolean[][] revealedBefore = new boolean[numRows][numColumns];
+            start = System.nanoTime();
+            int numBefore = 0;
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numColumns; j++) {
+                    if (!bombs[i][j] && !revealedBefore[i][j]) numBefore += revealRecursively(counts, bombs, revealedBefore, i, j);
+                }
+            }
+            this.baselineFillNanos += System.nanoTime() - start;
+
+            boolean[] revealedAfter = new boolean[bombGrid.getArea()];
+            int[] stack = new int[bombGrid.getArea()];
+            int[] neighbours = new int[this.topology.getMaxDegree()];
+            start = System.nanoTime();
+            int numAfter = 0;
+            for (int i = 0; i < numRows; i++) {
+                for (int j = 0; j < numColumns; j++) {
+                    if (!bombs[i][j] && !revealedAfter[this.topology.index(i, j)])
+                        numAfter += this.revealWithStack(counts, bombs, revealedAfter, stack, neighbours, i, j);
+                }
+            }
+            this.topologyFillNanos += System.nanoTime() - start;
+
+            if (numBefore != numAfter || numAfter != bombGrid.getArea() - bombGrid.getNumBombs())
+                throw new IllegalStateException("flood fills revealed " + numBefore + " and " + numAfter
+                        + " cells on board " + (seed + round));
+        }
+    }
+
+    /**
+     * Places the bombs the same way {@link BombGrid} does.
+     *
+     * @return row and column of each bomb
+     */
+    private int[][] placeBombs(Random random) {
+        boolean[][] bombGrid = new boolean[numRows][numColumns];
+        int[][] bombLocations = new int[numBombs][2];
+        int count = 0;
+        while (count < numBombs) {
+            int row = random.nextInt(numRows);
+            int column = random.nextInt(numColumns);
+
+            if (!bombGrid[row][column]) {
+                bombGrid[row][column] = true;
+                bombLocations[count][0] = row;
+                bombLocations[count][1] = column;
+                count++;
+            }
+        }
+        return bombLocations;
+    }
+
+    /**
+     * Counts the bombs the way the game did before topologies
+     * were added, with a branch for each of the eight neighbours.
+     */
+    private int[][] countAroundBombs(int[][] bombLocations) {
+        int[][] countGrid = new int[numRows][numColumns];
+        for (int[] bomb : bombLocations) {
+            int row = bomb[0];
+            int column = bomb[1];
+
+            countGrid[row][column] += 1;
+
+            if (row > 0) countGrid[row - 1][column] += 1;
+
+            if (row > 0 && column > 0) countGrid[row - 1][column - 1] += 1;
+
+            if (row > 0 && column < numColumns - 1) countGrid[row - 1][column + 1] += 1;
+
+            if (row < numRows - 1) countGrid[row + 1][column] += 1;
+
+            if (row < numRows - 1 && column > 0) countGrid[row + 1][column - 1] += 1;
+
+            if (column > 0) countGrid[row][column - 1] += 1;
+
+            if (column < numColumns - 1) countGrid[row][column + 1] += 1;
+
+            if (column < numColumns - 1 && row < numRows - 1) countGrid[row + 1][column + 1] += 1;
+        }
+        return countGrid;
+    }
+
+    /**
+     * Counts the bombs with the loop {@link BombGrid} uses
+     * for topologies other than square-8.
+     */
+    private int[][] countNeighbours(int[][] bombLocations) {
+        int[][] countGrid = new int[numRows][numColumns];
+        int[] neighbours = new int[this.topology.getMaxDegree()];
+        for (int[] bomb : bombLocations) {
+            int row = bomb[0];
+            int column = bomb[1];
+
+            countGrid[row][column] += 1;
+
+            int degree = this.topology.neighbours(this.topology.index(row, column), neighbours);
+            for (int k = 0; k < degree; k++) {
+                int neighbour = neighbours[k];
+                countGrid[neighbour / numColumns][neighbour % numColumns] += 1;
+            }
+        }
+        return countGrid;
+    }
+
+    /**
+     * The flood fill the game had before topologies were added,
+     * visiting the eight neighbours in the same order.
+     *
+     * @return number of cells revealed
+     */
+    private static int revealRecursively(int[][] counts, boolean[][] bombs, boolean[][] revealed, int row, int column) {
+        revealed[row][column] = true; //reveal original cell
+        if (counts[row][column] != 0) return 1;
+        int lastRow = counts.length - 1;
+        int lastColumn = counts[0].length - 1;
+
+        int numRevealed = 1;
+        if (row > 0) numRevealed += visit(counts, bombs, revealed, row - 1, column);
+        if (row > 0 && column > 0) numRevealed += visit(counts, bombs, revealed, row - 1, column - 1);
+        if (row > 0 && column < lastColumn) numRevealed += visit(counts, bombs, revealed, row - 1, column + 1);
+        if (row < lastRow) numRevealed += visit(counts, bombs, revealed, row + 1, column);
+        if (row < lastRow && column > 0) numRevealed += visit(counts, bombs, revealed, row + 1, column - 1);
+        if (column > 0) numRevealed += visit(counts, bombs, revealed, row, column - 1);
+        if (column < lastColumn) numRevealed += visit(counts, bombs, revealed, row, column + 1);
+        if (column < lastColumn && row < lastRow) numRevealed += visit(counts, bombs, revealed, row + 1, column + 1);
+        return numRevealed;
+    }
+
+    /**
+     * Visits a neighbour in the old flood fill.
+     *
+     * @return number of cells revealed
+     */
+    private static int visit(int[][] counts, boolean[][] bombs, boolean[][] revealed, int row, int column) {
+        if (counts[row][column] == 0 && !revealed[row][column]) return revealRecursively(counts, bombs, revealed, row, column);
+        if (bombs[row][column] || revealed[row][column]) return 0;
+        revealed[row][column] = true;
+        return 1;
+    }
+
+    /**
+     * The flood fill of the {@link GameDriver}, which walks
+     * the topology with an explicit stack.
+     *
+     * @return number of cells revealed
+     */
+    private int revealWithStack(int[][] counts, boolean[][] bombs, boolean[] revealed, int[] stack, int[] neighbours,
+                                int row, int column) {
+        int start = this.topology.index(row, column);
+        revealed[start] = true;
+        if (counts[row][column] != 0) return 1;
+        int numRevealed = 1;
+        int top = 0;
+        stack[top++] = start;
+
+        while (top > 0) {
+            int degree = this.topology.neighbours(stack[--top], neighbours);
+            for (int k = 0; k < degree; k++) {
+                int neighbour = neighbours[k];
+                int r = neighbour / numColumns;
+                int c = neighbour % numColumns;
+                if (revealed[neighbour] || bombs[r][c]) continue;
+                revealed[neighbour] = true;
+                numRevealed++;
+                if (counts[r][c] == 0) stack[top++] = neighbour;
+            }
+        }
+        return numRevealed;
+    }
+
+    /**
+     * Runs the benchmark with the arguments given on the command
+     * line, once to warm up and once to print the times.
+     *
+     * @param args command line arguments, see the usage above
+     */
+    public static void main(String[] args) {
+        int numRows = 1000;
+        int numColumns = 1000;
+        int numBombs = 100_000;
+        int numRounds = 10;
+        long seed = System.nanoTime();
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--rows":
+                        numRows = Integer.parseInt(value);
+                        break;
+                    case "--columns":
+                        numColumns = Integer.parseInt(value);
+                        break;
+                    case "--bombs":
+                        numBombs = Integer.parseInt(value);
+                        break;
+                    case "--rounds":
+                        numRounds = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+
+            TopologyBenchmark benchmark = new TopologyBenchmark(numRows, numColumns, numBombs, numRounds);
+            long firstSeed = seed;
+            Thread runner = new Thread(null, () -> {
+                benchmark.run(firstSeed); //warm up
+                benchmark.run(firstSeed);
+            }, "benchmark", STACK_SIZE);
+            runner.setUncaughtExceptionHandler((thread, e) -> {
+                e.printStackTrace();
+                System.exit(1);
+            });
+            runner.start();
+            runner.join();
+
+            double rounds = numRounds * 1e3; //microseconds per board
+            System.err.printf("%dx%d boards with %d bombs, %d rounds, seed %d%n",
+                    numRows, numColumns, numBombs, numRounds, seed);
+            System.err.printf("count grid: baseline %.1f us, square-8 %.1f us, generic topology loop %.1f us%n",
+                    benchmark.baselineCountNanos / rounds, benchmark.squareCountNanos / rounds,
+                    benchmark.genericCountNanos / rounds);
+            System.err.printf("flood fill: baseline %.1f us, topology %.1f us%n",
+                    benchmark.baselineFillNanos / rounds, benchmark.topologyFillNanos / rounds);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: TopologyBenchmark [--rows R] [--columns C] [--bombs B] [--rounds N] [--seed S]");
+            System.exit(2);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}